@@ -0,0 +1,22 @@
+package at.htlhl.chess.boardlogic;
+
+/**
+ * Gets notified about every change of the pieces on the board of a {@link Field}, including the changes made by undoing moves.
+ * Used to keep state derived from the board up to date incrementally.
+ */
+public interface BoardChangeListener {
+
+    /**
+     * Called before the piece on a square is replaced
+     *
+     * @param boardIndex the index of the square on the board
+     * @param oldPiece   the piece that was on the square, may be empty
+     * @param newPiece   the piece that is put on the square, may be empty
+     */
+    void pieceChanged(int boardIndex, byte oldPiece, byte newPiece);
+
+    /**
+     * Called after the whole board was replaced, e.g. by setting a FEN
+     */
+    void boardSet(Field field);
+}
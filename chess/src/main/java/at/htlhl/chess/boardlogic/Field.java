@@ -15,6 +15,21 @@ public class Field {
 
     private static final String INITIAL_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
 
+    /**
+     * The material value of every piece, indexed by the piece byte (as unsigned). Positive for white, negative for black, 0 for kings.
+     */
+    private static final int[] MATERIAL_VALUES = new int[256];
+
+    static {
+        byte[] pieces = {PieceUtil.PAWN_MASK, PieceUtil.KNIGHT_MASK, PieceUtil.BISHOP_MASK, PieceUtil.ROOK_MASK, PieceUtil.QUEEN_MASK};
+        for (byte piece : pieces) {
+            byte white = (byte) (piece | PieceUtil.WHITE);
+            byte black = (byte) (piece | PieceUtil.BLACK);
+            MATERIAL_VALUES[white & 0xFF] = -PieceUtil.getRelativeValue(white);
+            MATERIAL_VALUES[black & 0xFF] = -PieceUtil.getRelativeValue(black);
+        }
+    }
+
     /**
      * A List of all the pieces that black captured
      */
@@ -70,9 +85,57 @@ public class Field {
 
     /**
      * Stores the current Piece evaluation. Positive if white is up material and negative if black is up material.
+     * Kept up to date by {@link #setPieceOnSquare(Square, byte)}, like all the evaluation terms below.
      */
     private int pieceEvaluation = 0;
 
+    /**
+     * Stores the sum of the middlegame piece square values of all pieces (see {@link PieceSquareTables#MIDDLEGAME_PIECE_SQUARE_VALUES}).
+     * Positive if white's pieces stand better.
+     */
+    private int middlegamePositionalEvaluation = 0;
+
+    /**
+     * Stores the sum of the endgame piece square values of all pieces (see {@link PieceSquareTables#ENDGAME_PIECE_SQUARE_VALUES}).
+     * Positive if white's pieces stand better.
+     */
+    private int endgamePositionalEvaluation = 0;
+
+    /**
+     * The part of the game phase contributed by white's pieces (see {@link PieceSquareTables#PHASE_VALUES})
+     */
+    private int whitePhase = 0;
+
+    /**
+     * The part of the game phase contributed by black's pieces (see {@link PieceSquareTables#PHASE_VALUES})
+     */
+    private int blackPhase = 0;
+
+    /**
+     * Zobrist key of all pieces (see {@link ZobristUtil}), the other parts of the position key are added in {@link #getZobristKey()}
+     */
+    private long pieceKey = 0;
+
+    /**
+     * Zobrist key of the pawns only (see {@link ZobristUtil}), so pawn structure evaluations can be cached by it
+     */
+    private long pawnKey = 0;
+
+    /**
+     * The squares of all white pawns as a bitboard, bit n is board index n
+     */
+    private long whitePawns = 0;
+
+    /**
+     * The squares of all black pawns as a bitboard, bit n is board index n
+     */
+    private long blackPawns = 0;
+
+    /**
+     * The number of pieces on the board, including the kings
+     */
+    private int pieceCount = 0;
+
     /**
      * The last executed move.
      */
@@ -123,6 +186,11 @@ public class Field {
      */
     private AttackedSquaresUtil attackedSquaresUtil;
 
+    /**
+     * Gets notified about all changes of the board, null if there is none. Not copied by {@link #clone()}.
+     */
+    private BoardChangeListener boardChangeListener;
+
     /**
      * Makes a new Field and initialized it with the starting chess position.
      */
@@ -151,6 +219,7 @@ public class Field {
             return false;
         }
         gameState = GameState.NOT_DECIDED;
+        computeIncrementalEvaluation();
         pins = new ArrayList<>();
         moveChecker = new MoveChecker(this);
         positionCounts.clear();
@@ -162,6 +231,7 @@ public class Field {
         check = attackedSquaresUtil.lookForCheck(blackTurn ? Player.BLACK : Player.WHITE);
         legalMoves = moveChecker.getAllLegalMoves();
         gameState = computeGameState();
+        if (boardChangeListener != null) boardChangeListener.boardSet(this);
         return true;
     }
 
@@ -247,15 +317,13 @@ public class Field {
         // Promotions
         if (PieceUtil.isEmpty(move.getPromotionPiece()) == false) {
             setPieceOnSquare(move.getTargetSquare(), move.getPromotionPiece());
+            // the color has to be determined now, the turn is already switched back when this change is undone
+            byte promotedPawn = blackTurn ? PieceUtil.BLACK_PAWN : PieceUtil.WHITE_PAWN;
             changesInLastMove.add(new FieldChange("board",
-                    unused ->
-                            setPieceOnSquare(move.getStartingSquare(),
-                                    blackTurn ?
-                                            PieceUtil.BLACK_PAWN
-                                            : PieceUtil.WHITE_PAWN)));
+                    unused -> setPieceOnSquare(move.getStartingSquare(), promotedPawn)));
         }
 
-        calculateMaterial(capturedPiece, move);
+        calculateMaterial(capturedPiece);
         updatePlayedHalfMovesSinceLastPawnMoveOrCapture(move);
 
         if (blackTurn) {
@@ -303,6 +371,47 @@ public class Field {
         if (verbose) System.out.println("Game state: " + gameState);
     }
 
+    /**
+     * Passes the turn to the opponent without moving a piece (a null move), as used by the engine for null move pruning.
+     * Clears the possible en passant square and can be undone with {@link #undoMove()} like a normal move.
+     * Must not be used while the player to move is in check.
+     */
+    public void forceNullMove() {
+        var changesInLastMoveBefore = changesInLastMove;
+        changesInLastMove = new ArrayList<>(8);
+        changesInLastMove.add(new FieldChange("changesInLastMove", undo -> changesInLastMove = changesInLastMoveBefore));
+
+        var possibleEnPassantSquareBefore = possibleEnPassantSquare;
+        if (possibleEnPassantSquareBefore != null) {
+            possibleEnPassantSquare = null;
+            changesInLastMove.add(new FieldChange("possibleEnPassantSquare", undo -> possibleEnPassantSquare = possibleEnPassantSquareBefore));
+        }
+
+        blackTurn = !blackTurn;
+        changesInLastMove.add(new FieldChange("blackTurn", undo -> blackTurn = !blackTurn));
+
+        var pinsBefore = pins;
+        pins = attackedSquaresUtil.lookForPins(blackTurn ? Player.BLACK : Player.WHITE);
+        changesInLastMove.add(new FieldChange("pinsBefore", undo -> pins = pinsBefore));
+
+        var checkBefore = check;
+        check = attackedSquaresUtil.lookForCheck(blackTurn ? Player.BLACK : Player.WHITE);
+        changesInLastMove.add(new FieldChange("checkBefore", undo -> check = checkBefore));
+
+        var legalMovesBefore = legalMoves;
+        legalMoves = moveChecker.getAllLegalMoves();
+        changesInLastMove.add(new FieldChange("legalMoves", undo -> legalMoves = legalMovesBefore));
+
+        // no position is repeated by a null move, only a stalemate can end the game here
+        var gameStateBefore = gameState;
+        gameState = legalMoves.isEmpty() ? GameState.DRAW : GameState.NOT_DECIDED;
+        changesInLastMove.add(new FieldChange("gameState", undo -> gameState = gameStateBefore));
+
+        var lastMoveBefore = lastMove;
+        lastMove = null;
+        changesInLastMove.add(new FieldChange("lastMove", undo -> lastMove = lastMoveBefore));
+    }
+
     /**
      * Updates the number of half-moves since the last pawn move or capture.
      * This counter is incremented after each move unless a pawn is moved or a piece is captured,
@@ -379,7 +488,7 @@ public class Field {
      *
      * @param capturedPiece the piece to add (eg. the piece that got captured in the last move)
      */
-    private void calculateMaterial(byte capturedPiece, Move move) {
+    private void calculateMaterial(byte capturedPiece) {
         if (PieceUtil.isEmpty(capturedPiece)) return;
 
         if (PieceUtil.isWhite(capturedPiece)) {
@@ -389,10 +498,6 @@ public class Field {
             capturedBlackPieces.add(capturedPiece);
             changesInLastMove.add(new FieldChange("capturedBlackPieces", undo -> capturedBlackPieces.removeLast()));
         }
-        var before = pieceEvaluation;
-        pieceEvaluation += PieceUtil.getRelativeValue(capturedPiece) - PieceUtil.getRelativeValue(move.getPromotionPiece());
-        if (before != pieceEvaluation)
-            changesInLastMove.add(new FieldChange("pieceEvaluation", undo -> pieceEvaluation = before));
     }
 
     /**
@@ -521,10 +626,66 @@ public class Field {
     }
 
     /**
-     * Sets piece byte on board
+     * Sets piece byte on board and updates the material, positional evaluations, phase and Zobrist keys by the difference of the replaced and the new piece
      */
     private void setPieceOnSquare(Square square, byte piece) {
-        board[square.y() * 8 + square.x()] = piece;
+        int index = square.y() * 8 + square.x();
+        int oldPiece = board[index] & 0xFF;
+        int newPiece = piece & 0xFF;
+        if (boardChangeListener != null) boardChangeListener.pieceChanged(index, board[index], piece);
+        pieceEvaluation += MATERIAL_VALUES[newPiece] - MATERIAL_VALUES[oldPiece];
+        middlegamePositionalEvaluation += PieceSquareTables.MIDDLEGAME_PIECE_SQUARE_VALUES[newPiece][index]
+                - PieceSquareTables.MIDDLEGAME_PIECE_SQUARE_VALUES[oldPiece][index];
+        endgamePositionalEvaluation += PieceSquareTables.ENDGAME_PIECE_SQUARE_VALUES[newPiece][index]
+                - PieceSquareTables.ENDGAME_PIECE_SQUARE_VALUES[oldPiece][index];
+        if (PieceUtil.isWhite(board[index])) whitePhase -= PieceSquareTables.PHASE_VALUES[oldPiece];
+        else blackPhase -= PieceSquareTables.PHASE_VALUES[oldPiece];
+        if (PieceUtil.isWhite(piece)) whitePhase += PieceSquareTables.PHASE_VALUES[newPiece];
+        else blackPhase += PieceSquareTables.PHASE_VALUES[newPiece];
+        pieceKey ^= ZobristUtil.getPieceKey(board[index], index) ^ ZobristUtil.getPieceKey(piece, index);
+        if (PieceUtil.isPawn(board[index])) togglePawn(board[index], index);
+        if (PieceUtil.isPawn(piece)) togglePawn(piece, index);
+        if (oldPiece != PieceUtil.EMPTY) pieceCount--;
+        if (newPiece != PieceUtil.EMPTY) pieceCount++;
+        board[index] = piece;
+    }
+
+    /**
+     * Computes the material, positional evaluations, phase and Zobrist keys of the whole board, only needed when the board is set without moves
+     */
+    private void computeIncrementalEvaluation() {
+        pieceEvaluation = 0;
+        middlegamePositionalEvaluation = 0;
+        endgamePositionalEvaluation = 0;
+        whitePhase = 0;
+        blackPhase = 0;
+        pieceCount = 0;
+        for (int i = 0; i < 64; i++) {
+            int piece = board[i] & 0xFF;
+            if (piece != PieceUtil.EMPTY) pieceCount++;
+            pieceEvaluation += MATERIAL_VALUES[piece];
+            middlegamePositionalEvaluation += PieceSquareTables.MIDDLEGAME_PIECE_SQUARE_VALUES[piece][i];
+            endgamePositionalEvaluation += PieceSquareTables.ENDGAME_PIECE_SQUARE_VALUES[piece][i];
+            if (PieceUtil.isWhite(board[i])) whitePhase += PieceSquareTables.PHASE_VALUES[piece];
+            else blackPhase += PieceSquareTables.PHASE_VALUES[piece];
+        }
+        pieceKey = 0;
+        pawnKey = 0;
+        whitePawns = 0;
+        blackPawns = 0;
+        for (int i = 0; i < 64; i++) {
+            pieceKey ^= ZobristUtil.getPieceKey(board[i], i);
+            if (PieceUtil.isPawn(board[i])) togglePawn(board[i], i);
+        }
+    }
+
+    /**
+     * Adds the pawn to the pawn key and bitboards if it is not there, otherwise removes it
+     */
+    private void togglePawn(byte pawn, int index) {
+        pawnKey ^= ZobristUtil.getPieceKey(pawn, index);
+        if (PieceUtil.isWhite(pawn)) whitePawns ^= 1L << index;
+        else blackPawns ^= 1L << index;
     }
 
 
@@ -545,6 +706,14 @@ public class Field {
         return possibleEnPassantSquare;
     }
 
+    public int getPlayedHalfMovesSinceLastPawnMoveOrCapture() {
+        return playedHalfMovesSinceLastPawnMoveOrCapture;
+    }
+
+    public int getNumberOfNextMove() {
+        return numberOfNextMove;
+    }
+
     public Player getPlayerInCheck() {
         return check == null ? null : check.getPlayerInCheck();
     }
@@ -561,6 +730,70 @@ public class Field {
         return pieceEvaluation;
     }
 
+    public int getMiddlegamePositionalEvaluation() {
+        return middlegamePositionalEvaluation;
+    }
+
+    public int getEndgamePositionalEvaluation() {
+        return endgamePositionalEvaluation;
+    }
+
+    /**
+     * Gets the game phase derived from the remaining pieces, {@link PieceSquareTables#MAX_PHASE} at the start and 0 with only kings and pawns left
+     */
+    public int getPhase() {
+        return whitePhase + blackPhase;
+    }
+
+    /**
+     * Gets the part of the game phase contributed by the pieces of one player, 0 if the player only has king and pawns
+     */
+    public int getPhase(Player player) {
+        return player == Player.WHITE ? whitePhase : blackPhase;
+    }
+
+    /**
+     * Gets the Zobrist key of the position: the pieces, the player to move, the castling rights and the en passant file
+     */
+    public long getZobristKey() {
+        long key = pieceKey ^ ZobristUtil.getCastlingKey(castlingInformation);
+        if (blackTurn) key ^= ZobristUtil.getBlackToMoveKey();
+        if (possibleEnPassantSquare != null) key ^= ZobristUtil.getEnPassantKey(possibleEnPassantSquare.x());
+        return key;
+    }
+
+    public long getPawnKey() {
+        return pawnKey;
+    }
+
+    /**
+     * @return the number of pieces on the board, including the kings
+     */
+    public int getPieceCount() {
+        return pieceCount;
+    }
+
+    /**
+     * Gets the squares of the pawns of one player as a bitboard, bit n is board index n
+     */
+    public long getPawns(Player player) {
+        return player == Player.WHITE ? whitePawns : blackPawns;
+    }
+
+    /**
+     * Sets the listener that gets notified about all changes of the board, replacing the previous one
+     *
+     * @param boardChangeListener the listener, or null to remove it
+     */
+    public void setBoardChangeListener(BoardChangeListener boardChangeListener) {
+        this.boardChangeListener = boardChangeListener;
+        if (boardChangeListener != null) boardChangeListener.boardSet(this);
+    }
+
+    public Move getLastMove() {
+        return lastMove;
+    }
+
     /**
      * Creates a deep copy of the current Field instance
      *
@@ -579,12 +812,22 @@ public class Field {
         clone.numberOfNextMove = this.numberOfNextMove;
         clone.gameState = this.gameState;
         clone.pieceEvaluation = this.pieceEvaluation;
+        clone.middlegamePositionalEvaluation = this.middlegamePositionalEvaluation;
+        clone.endgamePositionalEvaluation = this.endgamePositionalEvaluation;
+        clone.whitePhase = this.whitePhase;
+        clone.blackPhase = this.blackPhase;
+        clone.pieceKey = this.pieceKey;
+        clone.pawnKey = this.pawnKey;
+        clone.whitePawns = this.whitePawns;
+        clone.blackPawns = this.blackPawns;
+        clone.pieceCount = this.pieceCount;
 
         clone.cachedKingPositions = (ArrayList<Square>) this.cachedKingPositions.clone();
         clone.blackAttackSquares = Arrays.copyOf(this.blackAttackSquares, 64);
         clone.whiteAttackSquares = Arrays.copyOf(this.whiteAttackSquares, 64);
         clone.pins = new ArrayList<>(this.pins.stream().map(Pin::clone).toList());
         clone.check = check == null ? null : this.check.clone();
+        clone.lastMove = lastMove == null ? null : lastMove.clone();
 
         clone.possibleEnPassantSquare = this.possibleEnPassantSquare != null
                 ? new Square(this.possibleEnPassantSquare.x(), this.possibleEnPassantSquare.y())
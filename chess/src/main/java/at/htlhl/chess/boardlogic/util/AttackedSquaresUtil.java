@@ -28,21 +28,26 @@ public class AttackedSquaresUtil {
         Square targetSquare = move.getTargetSquare();
         byte movedPiece = field.getPieceBySquare(targetSquare);
         boolean isWhite = PieceUtil.isWhite(movedPiece);
+        // a promoted piece was a pawn on the starting square
+        byte pieceBeforeMove = PieceUtil.isEmpty(move.getPromotionPiece()) ? movedPiece : (isWhite ? PieceUtil.WHITE_PAWN : PieceUtil.BLACK_PAWN);
 
         // update the piece that got moved
         int boardIndexOfTargetSquare = targetSquare.y() * 8 + targetSquare.x();
         board[boardIndexOfTargetSquare] = move.getCapturedPiece();
-        List<Square> targetSquaresToRemove = getAttackedSquares(startingSquare, isWhite, movedPiece);
+        List<Square> targetSquaresToRemove = getAttackedSquares(startingSquare, isWhite, pieceBeforeMove);
         board[boardIndexOfTargetSquare] = movedPiece;
 
         List<Square> targetSquaresToAdd = getAttackedSquares(targetSquare, isWhite, movedPiece);
         removeAttackSquares(targetSquaresToRemove, isWhite);
         addAttackSquares(targetSquaresToAdd, isWhite);
 
-        // remove the captured piece's attack squares
+        // remove the captured piece's attack squares, as they were before the move, when its rays ended at the starting square
         if (move.isCapture()) {
             byte capturedPiece = move.getCapturedPiece();
+            int boardIndexOfStartingSquare = startingSquare.y() * 8 + startingSquare.x();
+            board[boardIndexOfStartingSquare] = pieceBeforeMove;
             List<Square> targetSquaresToRemove2 = getAttackedSquares(targetSquare, isWhite == false, capturedPiece);
+            board[boardIndexOfStartingSquare] = PieceUtil.EMPTY;
             removeAttackSquares(targetSquaresToRemove2, isWhite == false);
         }
 
@@ -65,9 +70,11 @@ public class AttackedSquaresUtil {
             addAttackSquares(targetSquaresToAddBecauseMovedPieceGaveMoreVision, isOpponent != isWhite);
         }
 
-        // go out from target square and update the sliding pieces that got blocked
+        // go out from target square and update the sliding pieces that got blocked.
+        // Sliding pieces behind the starting square on the line of the move were blocked by the moved piece before already,
+        // and the ones in front of it only lose the squares up to the starting square.
         if (move.isCapture() == false) {
-            HashMap<int[], Boolean> directionsToRemoveTargetSquaresIn = getDirectionsOfChangedAttackSquares(targetSquare, isWhite, null);
+            HashMap<int[], Boolean> directionsToRemoveTargetSquaresIn = getDirectionsOfChangedAttackSquares(targetSquare, isWhite, startingSquare);
             for (int[] dir : directionsToRemoveTargetSquaresIn.keySet()) {
                 ArrayList<Square> targetSquaresToRemoveBecauseMovedPieceBlockedVision = new ArrayList<>();
                 boolean isOpponent = directionsToRemoveTargetSquaresIn.get(dir);
@@ -76,7 +83,7 @@ public class AttackedSquaresUtil {
                     int y = targetSquare.y() + dir[1] * i;
                     if (!moveChecker.isOnBoard(x, y)) break;
                     byte piece = board[y * 8 + x];
-                    if (PieceUtil.isEmpty(piece) == false) {
+                    if (PieceUtil.isEmpty(piece) == false || startingSquare.equals(new Square(x, y))) {
                         targetSquaresToRemoveBecauseMovedPieceBlockedVision.add(new Square(x, y));
                         break;
                     }
@@ -91,22 +98,16 @@ public class AttackedSquaresUtil {
             field.setWhiteAttackSquares(findAttackedSquares(Player.WHITE));
             field.setBlackAttackSquares(findAttackedSquares(Player.BLACK));
         }
-
-
-        // if it is a promotion, add the attacks of the promoted piece
-        if (PieceUtil.isEmpty(move.getPromotionPiece()) == false) {
-            addAttackSquares(getAttackedSquares(targetSquare, isWhite, move.getPromotionPiece()), isWhite);
-        }
     }
 
-    private HashMap<int[], Boolean> getDirectionsOfChangedAttackSquares(Square changedSquare, boolean isWhite, Square executedMoveTargetSquare) {
+    private HashMap<int[], Boolean> getDirectionsOfChangedAttackSquares(Square changedSquare, boolean isWhite, Square otherSquareOfMove) {
         var directions = new HashMap<int[], Boolean>();
         for (int[] dir : MoveChecker.slidingDirections) {
             for (int i = 1; i < 8; i++) {
                 int x = changedSquare.x() + dir[0] * i;
                 int y = changedSquare.y() + dir[1] * i;
                 if (!moveChecker.isOnBoard(x, y)) break;
-                if (Objects.equals(executedMoveTargetSquare, new Square(x, y))) break;
+                if (Objects.equals(otherSquareOfMove, new Square(x, y))) break;
 
                 byte piece = field.getBoard()[y * 8 + x];
                 if (PieceUtil.isEmpty(piece)) continue;
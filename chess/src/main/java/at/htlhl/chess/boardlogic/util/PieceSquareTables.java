@@ -0,0 +1,188 @@
+package at.htlhl.chess.boardlogic.util;
+
+/**
+ * Piece square tables for the middlegame and the endgame, written from white's point of view (a8 first, h1 last).
+ * The values for black are the same tables mirrored vertically.
+ * The evaluation blends both by the game phase, see {@link #PHASE_VALUES}.
+ * The {@link at.htlhl.chess.boardlogic.Field} keeps the sums of the values and the phase up to date with every move,
+ * so they are part of the board logic like the piece values of {@link PieceUtil}.
+ */
+public class PieceSquareTables {
+
+    /**
+     * The phase of a position with all pieces on the board, it decreases towards 0 as pieces get traded
+     */
+    public static final int MAX_PHASE = 24;
+
+    /**
+     * The middlegame piece square value of every piece on every square, indexed by the piece byte (as unsigned) and the board index.
+     * Values of black pieces are negated, so the values of all pieces can simply be summed up. Empty squares are 0.
+     */
+    public static final int[][] MIDDLEGAME_PIECE_SQUARE_VALUES = new int[256][64];
+
+    /**
+     * The endgame counterpart of {@link #MIDDLEGAME_PIECE_SQUARE_VALUES}
+     */
+    public static final int[][] ENDGAME_PIECE_SQUARE_VALUES = new int[256][64];
+
+    /**
+     * How much each piece (indexed by the piece byte as unsigned) contributes to the game phase
+     */
+    public static final int[] PHASE_VALUES = new int[256];
+
+    public static final int[][] middlegameTables = {
+            // PAWN
+            {
+                    0,   0,   0,   0,   0,   0,   0,   0,
+                    11,  14,  16,  19,  19,  16,  14,  11,
+                    4,   7,  10,  13,  13,  10,   7,   4,
+                    1,   4,   7,  12,  12,   7,   4,   1,
+                    0,   1,   5,  11,  11,   5,   1,   0,
+                    0,   5,   2,   0,   0,   2,   5,   0,
+                    0,   0,   0, -50, -50,   0,   0,   0,
+                    0,   0,   0,   0,   0,   0,   0,   0
+            },
+            // KNIGHT
+            {
+                    -25, -20, -15, -15, -15, -15, -20, -25,
+                    -20, -10,   0,   3,   3,   0, -10, -20,
+                    -15,   3,   5,   8,   8,   5,   3, -15,
+                    -15,   5,   8,  10,  10,   8,   5, -15,
+                    -15,   5,   8,  10,  10,   8,   5, -15,
+                    -15,   3,   5,   8,   8,   5,   3, -15,
+                    -20, -10,   0,   3,   3,   0, -10, -20,
+                    -25, -20, -15, -15, -15, -15, -20, -25
+            },
+            // BISHOP
+            {
+                    -10,  -5,  -5,  -5,  -5,  -5,  -5, -10,
+                    -5,    0,   0,   0,   0,   0,   0,  -5,
+                    -5,    6,   7,   8,   8,   7,   6,  -5,
+                    -5,   10,  10,   8,   8,  10,  10,  -5,
+                    -5,    0,  10,   8,   8,  10,   0,  -5,
+                    -5,   10,   6,  10,  10,   6,  10,  -5,
+                    -5,   10,   0,   0,   0,   0,  10,  -5,
+                    -10,  -5, -10,  -5,  -5, -10,  -5, -10
+            },
+            // ROOK
+            {
+                    0,   3,   3,   3,   3,   3,   3,   0,
+                    3,   5,   5,   5,   5,   5,   5,   3,
+                    -3,  0,   0,   0,   0,   0,   0,  -3,
+                    -3,  0,   0,   0,   0,   0,   0,  -3,
+                    -3,  0,   0,   0,   0,   0,   0,  -3,
+                    -3,  0,   0,   0,   0,   0,   0,  -3,
+                    -3,  0,   0,   0,   0,   0,   0,  -3,
+                    0,   0,   0,   0,   0,   0,   0,   0
+            },
+            // QUEEN
+            {
+                    -5,  -3,  -3,  -2,  -2,  -3,  -3,  -5,
+                    -3,   0,   0,   2,   2,   0,   0,  -3,
+                    -3,   0,   2,   4,   4,   2,   0,  -3,
+                    -2,   0,   4,   5,   5,   4,   0,  -2,
+                    -2,   0,   4,   5,   5,   4,   0,  -2,
+                    -3,   0,   2,   4,   4,   2,   0,  -3,
+                    -3,   0,   0,   2,   2,   0,   0,  -3,
+                    -5,  -3,  -3,  -2,  -2,  -3,  -3,  -5
+            },
+            // KING
+            {
+                    -15, -20, -20, -25, -25, -20, -20, -15,
+                    -15, -20, -20, -25, -25, -20, -20, -15,
+                    -15, -20, -20, -25, -25, -20, -20, -15,
+                    -10, -15, -15, -20, -20, -15, -15, -10,
+                    -5, -10, -10, -15, -15, -10, -10,  -5,
+                    0,   0,  -5, -10, -10,  -5,   0,   0,
+                    10,  10,   0,  -3,  -3,   0,  10,  10,
+                    15,  20,  10,   0,   0,   5,  20,  15
+            }
+    };
+
+    public static final int[][] endgameTables = {
+            // PAWN
+            {
+                    0,   0,   0,   0,   0,   0,   0,   0,
+                    60,  60,  60,  60,  60,  60,  60,  60,
+                    40,  40,  40,  40,  40,  40,  40,  40,
+                    25,  25,  25,  25,  25,  25,  25,  25,
+                    12,  12,  12,  12,  12,  12,  12,  12,
+                    5,   5,   5,   5,   5,   5,   5,   5,
+                    0,   0,   0,   0,   0,   0,   0,   0,
+                    0,   0,   0,   0,   0,   0,   0,   0
+            },
+            // KNIGHT
+            {
+                    -25, -20, -15, -15, -15, -15, -20, -25,
+                    -20, -10,   0,   0,   0,   0, -10, -20,
+                    -15,   0,   5,   8,   8,   5,   0, -15,
+                    -15,   0,   8,  10,  10,   8,   0, -15,
+                    -15,   0,   8,  10,  10,   8,   0, -15,
+                    -15,   0,   5,   8,   8,   5,   0, -15,
+                    -20, -10,   0,   0,   0,   0, -10, -20,
+                    -25, -20, -15, -15, -15, -15, -20, -25
+            },
+            // BISHOP
+            {
+                    -10,  -5,  -5,  -5,  -5,  -5,  -5, -10,
+                    -5,    0,   0,   0,   0,   0,   0,  -5,
+                    -5,    0,   5,   5,   5,   5,   0,  -5,
+                    -5,    0,   5,   8,   8,   5,   0,  -5,
+                    -5,    0,   5,   8,   8,   5,   0,  -5,
+                    -5,    0,   5,   5,   5,   5,   0,  -5,
+                    -5,    0,   0,   0,   0,   0,   0,  -5,
+                    -10,  -5,  -5,  -5,  -5,  -5,  -5, -10
+            },
+            // ROOK
+            {
+                    5,   5,   5,   5,   5,   5,   5,   5,
+                    8,   8,   8,   8,   8,   8,   8,   8,
+                    0,   0,   0,   0,   0,   0,   0,   0,
+                    0,   0,   0,   0,   0,   0,   0,   0,
+                    0,   0,   0,   0,   0,   0,   0,   0,
+                    0,   0,   0,   0,   0,   0,   0,   0,
+                    0,   0,   0,   0,   0,   0,   0,   0,
+                    0,   0,   0,   0,   0,   0,   0,   0
+            },
+            // QUEEN
+            {
+                    -10,  -5,  -5,  -5,  -5,  -5,  -5, -10,
+                    -5,    0,   3,   3,   3,   3,   0,  -5,
+                    -5,    3,   6,   8,   8,   6,   3,  -5,
+                    -5,    3,   8,  10,  10,   8,   3,  -5,
+                    -5,    3,   8,  10,  10,   8,   3,  -5,
+                    -5,    3,   6,   8,   8,   6,   3,  -5,
+                    -5,    0,   3,   3,   3,   3,   0,  -5,
+                    -10,  -5,  -5,  -5,  -5,  -5,  -5, -10
+            },
+            // KING
+            {
+                    -40, -25, -20, -15, -15, -20, -25, -40,
+                    -25, -10,   0,   5,   5,   0, -10, -25,
+                    -20,   0,  15,  20,  20,  15,   0, -20,
+                    -15,   5,  20,  25,  25,  20,   5, -15,
+                    -15,   5,  20,  25,  25,  20,   5, -15,
+                    -20,   0,  15,  20,  20,  15,   0, -20,
+                    -25, -10,   0,   5,   5,   0, -10, -25,
+                    -40, -25, -20, -15, -15, -20, -25, -40
+            }
+    };
+
+    static {
+        byte[] pieces = {PieceUtil.PAWN_MASK, PieceUtil.KNIGHT_MASK, PieceUtil.BISHOP_MASK, PieceUtil.ROOK_MASK, PieceUtil.QUEEN_MASK, PieceUtil.KING_MASK};
+        int[] phaseValues = {0, 1, 1, 2, 4, 0};
+        for (int type = 0; type < pieces.length; type++) {
+            int white = (pieces[type] | PieceUtil.WHITE) & 0xFF;
+            int black = (pieces[type] | PieceUtil.BLACK) & 0xFF;
+            PHASE_VALUES[white] = phaseValues[type];
+            PHASE_VALUES[black] = phaseValues[type];
+            for (int square = 0; square < 64; square++) {
+                int mirroredSquare = (7 - square / 8) * 8 + square % 8;
+                MIDDLEGAME_PIECE_SQUARE_VALUES[white][square] = middlegameTables[type][square];
+                MIDDLEGAME_PIECE_SQUARE_VALUES[black][square] = -middlegameTables[type][mirroredSquare];
+                ENDGAME_PIECE_SQUARE_VALUES[white][square] = endgameTables[type][square];
+                ENDGAME_PIECE_SQUARE_VALUES[black][square] = -endgameTables[type][mirroredSquare];
+            }
+        }
+    }
+}
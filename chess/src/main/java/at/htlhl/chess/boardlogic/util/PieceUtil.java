@@ -88,6 +88,22 @@ public final class PieceUtil {
         return isWhite(piece) ? -value : value;
     }
 
+    /**
+     * Gets the index of the piece type in the order pawn, knight, bishop, rook, queen, king.
+     * This is the order used by the piece square tables of the engine.
+     *
+     * @return the index of the piece type, or -1 if the square is empty
+     */
+    public static int getTypeIndex(byte piece) {
+        if (isPawn(piece)) return 0;
+        if (isKnight(piece)) return 1;
+        if (isBishop(piece)) return 2;
+        if (isRook(piece)) return 3;
+        if (isQueen(piece)) return 4;
+        if (isKing(piece)) return 5;
+        return -1;
+    }
+
     public static String toString(byte piece) {
         String name = PieceUtil.isBlack(piece) ? "black_" : "white_";
 
@@ -0,0 +1,78 @@
+package at.htlhl.chess.boardlogic.util;
+
+import java.util.SplittableRandom;
+
+/**
+ * Random keys for Zobrist hashing. A position key is the XOR of the keys of all its features,
+ * so it can be updated incrementally by XORing the keys of the features that change.
+ * The keys are generated from a fixed seed, so keys are the same in every run.
+ */
+public final class ZobristUtil {
+
+    private ZobristUtil() {
+    }
+
+    private static final long SEED = 0x2545F4914F6CDD1DL;
+
+    /**
+     * The key of every piece on every square, indexed by the piece byte (as unsigned) and the board index. Empty squares are 0.
+     */
+    private static final long[][] PIECE_KEYS = new long[256][64];
+
+    /**
+     * The key of every combination of castling rights, indexed by the castling information (see {@link CastlingUtil})
+     */
+    private static final long[] CASTLING_KEYS = new long[16];
+
+    /**
+     * The key of the file of a possible en passant square
+     */
+    private static final long[] EN_PASSANT_KEYS = new long[8];
+
+    private static final long BLACK_TO_MOVE_KEY;
+
+    static {
+        var random = new SplittableRandom(SEED);
+        byte[] pieces = {PieceUtil.PAWN_MASK, PieceUtil.KNIGHT_MASK, PieceUtil.BISHOP_MASK, PieceUtil.ROOK_MASK, PieceUtil.QUEEN_MASK, PieceUtil.KING_MASK};
+        for (byte piece : pieces) {
+            for (byte color : new byte[]{PieceUtil.WHITE, PieceUtil.BLACK}) {
+                long[] keys = PIECE_KEYS[(piece | color) & 0xFF];
+                for (int square = 0; square < 64; square++)
+                    keys[square] = random.nextLong();
+            }
+        }
+        for (int i = 0; i < CASTLING_KEYS.length; i++)
+            CASTLING_KEYS[i] = random.nextLong();
+        for (int i = 0; i < EN_PASSANT_KEYS.length; i++)
+            EN_PASSANT_KEYS[i] = random.nextLong();
+        BLACK_TO_MOVE_KEY = random.nextLong();
+    }
+
+    /**
+     * @return the key of the piece on the square, 0 if the piece is empty
+     */
+    public static long getPieceKey(byte piece, int boardIndex) {
+        return PIECE_KEYS[piece & 0xFF][boardIndex];
+    }
+
+    /**
+     * @return the key of the castling rights
+     */
+    public static long getCastlingKey(byte castlingInformation) {
+        return CASTLING_KEYS[castlingInformation & 0xF];
+    }
+
+    /**
+     * @return the key of an en passant square on the file, 0-7 from a to h
+     */
+    public static long getEnPassantKey(int file) {
+        return EN_PASSANT_KEYS[file];
+    }
+
+    /**
+     * @return the key that is added if black is to move
+     */
+    public static long getBlackToMoveKey() {
+        return BLACK_TO_MOVE_KEY;
+    }
+}
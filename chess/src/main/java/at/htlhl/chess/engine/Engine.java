@@ -3,31 +3,183 @@ package at.htlhl.chess.engine;
 import at.htlhl.chess.boardlogic.Field;
 import at.htlhl.chess.boardlogic.GameState;
 import at.htlhl.chess.boardlogic.Move;
-import at.htlhl.chess.boardlogic.util.PieceUtil;
+import at.htlhl.chess.boardlogic.Player;
 
 import java.util.ArrayList;
-import java.util.concurrent.TimeoutException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 public class Engine {
 
     public static final long DEFAULT_THINKING_TIME = 2_500_000_000l;
+
+    /**
+     * The minimum time between two progress reports to the {@link SearchListener}
+     */
+    public static final long REPORT_INTERVAL = 250_000_000L;
+
+    /**
+     * Scores beyond this value (or below its negation) are mate scores
+     */
+    private static final int MATE_THRESHOLD = Integer.MAX_VALUE - 10_000;
+    private static final int NULL_MOVE_MIN_DEPTH = 3;
+    /**
+     * Up to this phase of the player to move (a rook or two minor pieces), zugzwang is likely enough that null move cutoffs are verified
+     */
+    private static final int NULL_MOVE_VERIFICATION_PHASE = 2;
+    private static final int LATE_MOVE_REDUCTION_MIN_DEPTH = 3;
+    private static final int LATE_MOVE_REDUCTION_MIN_MOVE_NUMBER = 3;
+    private static final int LATE_MOVE_PRUNING_MAX_DEPTH = 3;
+    /**
+     * How many plies the quiescence search may go beyond the horizon
+     */
+    private static final int MAX_QUIESCENCE_DEPTH = 8;
+    /**
+     * The depth of the first iteration of iterative deepening
+     */
+    private static final int START_DEPTH = 1;
+    /**
+     * Iterative deepening stops at this depth, even if there is time left (e.g. when pondering or after finding a mate)
+     */
+    private static final int MAX_DEPTH = 64;
+
+    /**
+     * Logarithmic late move reductions, indexed by the remaining depth and the number of the move in the ordered list
+     */
+    private static final int[][] LATE_MOVE_REDUCTIONS = new int[64][64];
+
+    static {
+        for (int depth = 1; depth < 64; depth++)
+            for (int moveNumber = 1; moveNumber < 64; moveNumber++)
+                // StrictMath gives the same table on every machine, which keeps the node counts of the bench reproducible
+                LATE_MOVE_REDUCTIONS[depth][moveNumber] = (int) (0.75 + StrictMath.log(depth) * StrictMath.log(moveNumber) / 2.25);
+    }
+
     private Field field;
     private ArrayList<EvaluatedMove> evaluatedMoves = null;
     private int maxDepth;
     private int executedMoves = 0;
+    /**
+     * The number of nodes visited in the current search, used to check the limits only every {@link TimeManager#NODE_CHECK_INTERVAL} nodes
+     */
+    private long nodes = 0;
+    private TimeManager timeManager;
+    private SearchLimits limits;
+    /**
+     * The node limit of the current search, checked together with the time
+     */
+    private long nodeLimit;
+    private SearchStats searchStats = new SearchStats();
+    private SearchListener searchListener;
+    private long searchStartTime;
+    private long lastReportTime;
+    /**
+     * Counters of the current iteration for the {@link SearchStats}, reset when an iteration starts
+     */
+    private long iterationStartNodes;
+    private long iterationStartTime;
+    private long quiescenceNodes;
+    private int selectiveDepth;
+    private long cutoffs;
+    private long firstMoveCutoffs;
+    private long evaluationProbes;
+    private long evaluationHits;
+    private long lazyEvaluations;
+    private long pawnHashProbes;
+    private long pawnHashHits;
+    /**
+     * Set from any thread to stop the search, see {@link #stop()}
+     */
+    private AtomicBoolean stopFlag = new AtomicBoolean();
+    /**
+     * true once the current search noticed that it has to stop, all nodes return immediately from then on
+     */
+    private boolean stopped = false;
+    /**
+     * Triangular table of principal variations: row ply holds the best line found from that ply, starting at index ply
+     */
+    private final Move[][] principalVariations = new Move[MoveOrderer.MAX_PLY][MoveOrderer.MAX_PLY];
+    private final int[] principalVariationLengths = new int[MoveOrderer.MAX_PLY];
+    /**
+     * The principal variations of the last completed iteration, one for each of the best {@link #multiPV} root moves
+     */
+    private List<List<Move>> principalVariationLines = List.of();
+    /**
+     * The number of root moves that get an exact score and their own principal variation
+     */
+    private int multiPV = 1;
     private int evaluatedPositions = 0;
+    /**
+     * true to print the results of every search
+     */
+    private boolean verbose = true;
+    private final MoveOrderer moveOrderer = new MoveOrderer();
+    private final SearchSettings searchSettings = new SearchSettings();
+    private final Evaluator evaluator;
+    private final EvaluationCache evaluationCache;
+    private PolyglotBook openingBook;
+    private boolean weightedRandomBookMoves;
+    private Tablebases tablebases;
 
     public Engine() {
         this(new Field());
     }
 
     public Engine(Field field) {
-        this.field = field.clone();
+        this(field, new PositionTablesEvaluator(), EvaluationCache.getShared());
+    }
+
+    /**
+     * Makes an engine with its own evaluation cache, as the evaluations of other evaluators must not end up in the shared one
+     */
+    public Engine(Field field, Evaluator evaluator) {
+        this(field, evaluator, new EvaluationCache(1 << 16));
+    }
+
+    /**
+     * @param evaluator       the static evaluation, only used by this engine
+     * @param evaluationCache the cache for static evaluations, may be shared with engines on other threads that use the same kind of evaluator
+     */
+    public Engine(Field field, Evaluator evaluator, EvaluationCache evaluationCache) {
+        this.evaluator = evaluator;
+        this.evaluationCache = evaluationCache;
+        setField(field);
     }
 
-    public void setField(Field field) {
+    public final void setField(Field field) {
         this.field = field.clone();
+        evaluator.attach(this.field);
+    }
+
+    /**
+     * Brings the engine to the position of the field, which is not changed or kept.
+     * If the field is the position of the engine after one more move, only that move is played on the field of the engine,
+     * so the state kept about it (e.g. the accumulator of the evaluator) is updated incrementally. Otherwise it works like {@link #setField(Field)}.
+     * Used to keep one engine for a whole game.
+     */
+    public void updateField(Field field) {
+        String fen = field.getFEN();
+        if (this.field.getFEN().equals(fen)) return;
+        Move lastMove = field.getLastMove();
+        if (lastMove != null) {
+            for (Move move : this.field.getLegalMoves()) {
+                if (MoveOrderer.encode(move) != MoveOrderer.encode(lastMove)) continue;
+                this.field.forceMove(move, false);
+                if (this.field.getFEN().equals(fen)) return;
+                this.field.undoMove();
+                break;
+            }
+        }
+        setField(field);
+    }
+
+    /**
+     * Forgets everything learned about the previous game, use this before searching a position of another game
+     */
+    public void newGame() {
+        moveOrderer.clear();
     }
 
     public Move getBestMove(String fen) {
@@ -35,74 +187,480 @@ public class Engine {
         return getBestMove();
     }
 
+    /**
+     * @return the best move, null if the game is over
+     */
     public Move getBestMove() {
-        return getBestMoves().getFirst().move();
+        var bestMoves = getBestMoves();
+        return bestMoves.isEmpty() ? null : bestMoves.getFirst().move();
     }
 
     public ArrayList<EvaluatedMove> getBestMoves(long thinkingTimeNS) {
+        return getBestMoves(SearchLimits.moveTime(thinkingTimeNS));
+    }
+
+    /**
+     * Searches with iterative deepening until the first of the limits is reached or {@link #stop()} is called.
+     * The stop flag is not reset by the search, a stop that arrives before it started is not lost (see {@link #clearStop()}).
+     *
+     * @return the root moves of the last completed iteration sorted from best to worst, empty if the game is over
+     */
+    public ArrayList<EvaluatedMove> getBestMoves(SearchLimits limits) {
+        return getBestMoves(limits.createTimeManager(), limits);
+    }
+
+    /**
+     * Searches with iterative deepening until the time manager decides to stop or {@link #stop()} is called.
+     * Used to control the time from outside, e.g. when pondering.
+     *
+     * @return the root moves of the last completed iteration sorted from best to worst
+     */
+    public ArrayList<EvaluatedMove> getBestMoves(TimeManager timeManager) {
+        return getBestMoves(timeManager, SearchLimits.infinite());
+    }
+
+    private ArrayList<EvaluatedMove> getBestMoves(TimeManager timeManager, SearchLimits limits) {
+        var searchEvent = new SearchEvent();
+        searchEvent.begin();
+        searchStartTime = System.nanoTime();
+        lastReportTime = searchStartTime;
+        this.timeManager = timeManager;
+        this.limits = limits;
+        nodeLimit = limits.getNodes() > 0 ? limits.getNodes() : Long.MAX_VALUE;
+        searchStats = new SearchStats();
+        stopped = false;
         evaluatedMoves = null;
+        principalVariationLines = List.of();
         evaluatedPositions = 0;
         executedMoves = 0;
-        maxDepth = 2;
-        var timeBefore = System.nanoTime();
+        nodes = 0;
+        maxDepth = START_DEPTH;
+        moveOrderer.clearKillers();
+        if (getPawnHashTable() != null)
+            getPawnHashTable().resetHitRate();
+        if (field.getLegalMoves().isEmpty()) {
+            // mate or stalemate, there is nothing to search
+            evaluatedMoves = new ArrayList<>();
+            searchStats.finish(0, System.nanoTime() - searchStartTime);
+            return evaluatedMoves;
+        }
+        if (openingBook != null) {
+            var bookMoves = getBookMoves();
+            if (bookMoves != null) {
+                evaluatedMoves = bookMoves;
+                principalVariationLines = List.of(List.of(bookMoves.getFirst().move()));
+                return evaluatedMoves;
+            }
+        }
+        if (tablebases != null) {
+            var tablebaseMoves = getTablebaseMoves();
+            if (tablebaseMoves != null) {
+                evaluatedMoves = tablebaseMoves;
+                principalVariationLines = List.of(List.of(tablebaseMoves.getFirst().move()));
+                return evaluatedMoves;
+            }
+        }
+        timeManager.start();
+
+        while (true) {
+            moveOrderer.ageHistory();
+            var iterationEvent = new SearchIterationEvent();
+            iterationEvent.begin();
+            startIteration();
+            firstIteration(maxDepth, Integer.MIN_VALUE, Integer.MAX_VALUE);
+            if (stopped) break;
+            finishIteration(maxDepth, iterationEvent);
+            maxDepth++;
+            var best = evaluatedMoves.getFirst();
+            int score = field.isBlackTurn() ? -best.evaluation() : best.evaluation();
+            if (timeManager.shouldStartIteration(best.move(), score) == false || maxDepth > MAX_DEPTH
+                    || (limits.getDepth() > 0 && maxDepth > limits.getDepth()) || isMateLimitReached(best.evaluation()))
+                break;
+        }
+        if (evaluatedMoves == null) {
+            // stopped before the first iteration completed, the move ordering is the best guess there is
+            var moves = new ArrayList<>(field.getLegalMoves());
+            moveOrderer.orderMoves(moves, field.getBoard(), 0, field.getLastMove(), field.isBlackTurn());
+            evaluatedMoves = moves.stream().map(move -> new EvaluatedMove(move, 0)).collect(Collectors.toCollection(ArrayList::new));
+        }
+        searchStats.finish(nodes, System.nanoTime() - searchStartTime);
+        searchEvent.end();
+        if (searchEvent.shouldCommit()) {
+            searchEvent.fen = field.getFEN();
+            searchEvent.depth = maxDepth - 1;
+            searchEvent.nodes = nodes;
+            searchEvent.nodesPerSecond = searchStats.getNodesPerSecond();
+            searchEvent.bestMove = evaluatedMoves.isEmpty() ? null : evaluatedMoves.getFirst().move().toString();
+            searchEvent.evaluation = evaluatedMoves.isEmpty() ? 0 : evaluatedMoves.getFirst().evaluation();
+            searchEvent.stopped = stopped;
+            searchEvent.commit();
+        }
+        if (verbose) printResults();
+        return evaluatedMoves;
+    }
 
+    /**
+     * @return the moves of the opening book with the chosen one first and an evaluation of 0, or null if the position is not in the book
+     */
+    private ArrayList<EvaluatedMove> getBookMoves() {
+        var bookMoves = openingBook.getMoves(field);
+        if (bookMoves.isEmpty()) return null;
+        Move chosen = weightedRandomBookMoves ? openingBook.getWeightedRandomMove(field) : bookMoves.getFirst().move();
+        var result = new ArrayList<EvaluatedMove>(bookMoves.size());
+        result.add(new EvaluatedMove(chosen, 0));
+        for (var bookMove : bookMoves)
+            if (MoveOrderer.encode(bookMove.move()) != MoveOrderer.encode(chosen)) result.add(new EvaluatedMove(bookMove.move(), 0));
+        return result;
+    }
 
-        try {
-            while (true) {
-                firstIteration(maxDepth, Integer.MIN_VALUE, Integer.MAX_VALUE, timeBefore + thinkingTimeNS);
-                maxDepth++;
-            }
-        } catch (InterruptedException e) {
+    /**
+     * Sets the opening book, positions found in it are answered from the book without searching
+     *
+     * @param openingBook            the book, or null to always search
+     * @param weightedRandomBookMoves true to choose book moves randomly by their weights, false to always play the one with the highest weight
+     */
+    public void setOpeningBook(PolyglotBook openingBook, boolean weightedRandomBookMoves) {
+        this.openingBook = openingBook;
+        this.weightedRandomBookMoves = weightedRandomBookMoves;
+    }
+
+    /**
+     * @return the legal moves with the exact scores of the tablebases, sorted from best to worst,
+     * or null if the position or one of the positions after a move is not in the tables
+     */
+    private ArrayList<EvaluatedMove> getTablebaseMoves() {
+        if (field.getPieceCount() > tablebases.getMaxPieces() || tablebases.probe(field) == Tablebases.NOT_FOUND)
             return null;
-        } catch (TimeoutException e) {
-
-            var nanoTime = System.nanoTime() - timeBefore;
-            System.out.println("Engine finished calculating. Results:\n{\n" +
-                    "Depth: " + (maxDepth - 1) +
-                    "\nTime elapsed: " + nanoTime + " ns" + " (=" + nanoTime / 1_000_000 + " ms)" +
-                    "\nMoves Executed: " + executedMoves +
-                    "\nPositions Evaluated: " + evaluatedPositions +
-                    "\nTime per move: " + nanoTime / executedMoves + " ns" +
-                    "\nEvaluation: " + evaluatedMoves.getFirst().evaluation() +
-                    "\nBest Moves: " + evaluatedMoves +
-                    "\n}\n");
+        var result = new ArrayList<EvaluatedMove>();
+        for (Move move : field.getLegalMoves()) {
+            field.forceMove(move, false);
+            int score = getTablebaseScore(1);
+            field.undoMove();
+            if (score == Tablebases.NOT_FOUND) return null;
+            result.add(new EvaluatedMove(move, score));
+        }
+        // the fastest win first, and the slowest loss if there is no win
+        result.sort((m1, m2) -> field.isBlackTurn()
+                ? Integer.compare(m1.evaluation(), m2.evaluation())
+                : Integer.compare(m2.evaluation(), m1.evaluation()));
+        return result;
+    }
 
-            return evaluatedMoves;
+    /**
+     * @return the exact score of the position from the tablebases as a mate or draw score, or {@link Tablebases#NOT_FOUND}
+     */
+    private int getTablebaseScore(int ply) {
+        if (field.getGameState() != GameState.NOT_DECIDED) return evaluateCurrentPosition(ply);
+        int value = tablebases.probe(field);
+        if (value == Tablebases.NOT_FOUND || value == Tablebase.DRAW) return value;
+        int mateDistance = ply + Tablebase.toPlies((byte) value);
+        boolean whiteWins = (value > 0) != field.isBlackTurn();
+        return whiteWins ? Integer.MAX_VALUE - mateDistance : Integer.MIN_VALUE + mateDistance;
+    }
+
+    /**
+     * Sets the endgame tables, positions with few enough pieces are looked up instead of searched, at the root and in the search
+     *
+     * @param tablebases the tables, or null to always search
+     */
+    public void setTablebases(Tablebases tablebases) {
+        this.tablebases = tablebases;
+    }
+
+    private void startIteration() {
+        iterationStartNodes = nodes;
+        iterationStartTime = System.nanoTime();
+        quiescenceNodes = 0;
+        selectiveDepth = 0;
+        cutoffs = 0;
+        firstMoveCutoffs = 0;
+        evaluationProbes = 0;
+        evaluationHits = 0;
+        lazyEvaluations = 0;
+        if (getPawnHashTable() != null) {
+            pawnHashProbes = getPawnHashTable().getProbes();
+            pawnHashHits = getPawnHashTable().getHits();
+        }
+    }
+
+    /**
+     * Adds the statistics of the iteration that just completed to the {@link SearchStats} and commits its flight recorder event
+     */
+    private void finishIteration(int depth, SearchIterationEvent event) {
+        event.end();
+        long iterationNodes = nodes - iterationStartNodes;
+        var pawnHashTable = getPawnHashTable();
+        var previous = searchStats.getLastIteration();
+        var iteration = new SearchStats.Iteration(depth, iterationNodes, quiescenceNodes, selectiveDepth,
+                System.nanoTime() - iterationStartTime, cutoffs, firstMoveCutoffs, evaluationProbes, evaluationHits,
+                lazyEvaluations, pawnHashTable == null ? 0 : pawnHashTable.getProbes() - pawnHashProbes,
+                pawnHashTable == null ? 0 : pawnHashTable.getHits() - pawnHashHits,
+                previous == null ? 0 : (double) iterationNodes / Math.max(previous.nodes(), 1));
+        searchStats.addIteration(iteration);
+
+        if (event.shouldCommit()) {
+            event.depth = depth;
+            event.selectiveDepth = selectiveDepth;
+            event.nodes = iterationNodes;
+            event.quiescenceNodes = quiescenceNodes;
+            event.nodesPerSecond = iteration.getNodesPerSecond();
+            event.branchingFactor = iteration.branchingFactor();
+            event.firstMoveCutoffRate = iteration.getFirstMoveCutoffRate();
+            event.evaluationHitRate = iteration.getEvaluationHitRate();
+            event.lazyEvaluationRate = iteration.getLazyEvaluationRate();
+            event.pawnHashHitRate = iteration.getPawnHashHitRate();
+            if (evaluatedMoves.isEmpty() == false) {
+                event.bestMove = evaluatedMoves.getFirst().move().toString();
+                event.evaluation = evaluatedMoves.getFirst().evaluation();
+            }
+            event.commit();
         }
+
+        if (searchListener != null) {
+            lastReportTime = System.nanoTime();
+            searchListener.iterationCompleted(createSearchInfo());
+        }
+    }
+
+    /**
+     * @return the results of the last completed iteration with the current node count and time
+     */
+    private SearchInfo createSearchInfo() {
+        var iteration = searchStats.getLastIteration();
+        return new SearchInfo(iteration.depth(), iteration.selectiveDepth(), List.copyOf(evaluatedMoves),
+                List.copyOf(principalVariationLines), nodes, System.nanoTime() - searchStartTime);
+    }
+
+    /**
+     * Sets the listener that gets the results of every completed iteration and regular progress reports, replacing the previous one
+     *
+     * @param searchListener the listener, or null to remove it
+     */
+    public void setSearchListener(SearchListener searchListener) {
+        this.searchListener = searchListener;
+    }
+
+    /**
+     * @return the statistics of the last search, or of the running one
+     */
+    public SearchStats getSearchStats() {
+        return searchStats;
+    }
+
+    private PawnHashTable getPawnHashTable() {
+        return evaluator instanceof PositionTablesEvaluator positionTablesEvaluator ? positionTablesEvaluator.getPawnHashTable() : null;
+    }
+
+    private void printResults() {
+        var nanoTime = timeManager.getElapsedTime();
+        System.out.println("Engine finished calculating. Results:\n{\n" +
+                "Depth: " + (maxDepth - 1) +
+                "\nTime elapsed: " + nanoTime + " ns" + " (=" + nanoTime / 1_000_000 + " ms)" +
+                "\nMoves Executed: " + executedMoves +
+                "\nPositions Evaluated: " + evaluatedPositions +
+                "\nTime per move: " + nanoTime / Math.max(executedMoves, 1) + " ns" +
+                (getPawnHashTable() != null
+                        ? "\nPawn hash hit rate: " + Math.round(getPawnHashTable().getHitRate() * 1000) / 10.0 + " %"
+                        : "") +
+                "\nIterations:\n" + searchStats +
+                "\nEvaluation: " + evaluatedMoves.getFirst().evaluation() +
+                "\nBest Moves: " + evaluatedMoves +
+                "\n}\n");
     }
 
-    private void firstIteration(int maxDepth, int alpha, int beta, long endNanoTime) throws InterruptedException, TimeoutException {
-        var newEvaluatedMoves = new ArrayList<EvaluatedMove>(30);
+    /**
+     * Searches all root moves to the depth, the results are only kept if the iteration is not stopped.
+     * The best {@link #multiPV} moves get exact scores: the window of every root move is bounded by the worst of the best moves
+     * found so far instead of the best one, so only moves that cannot be among them fail low. Their scores are upper bounds.
+     */
+    private void firstIteration(int maxDepth, int alpha, int beta) {
         boolean isBlacksTurn = field.isBlackTurn();
-        int bestScore = isBlacksTurn ? Integer.MAX_VALUE : Integer.MIN_VALUE;
         int worstScore = isBlacksTurn ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+        var bestMoves = new ArrayList<EvaluatedMove>(multiPV + 1);
+        var bestLines = new ArrayList<List<Move>>(multiPV + 1);
+        var otherMoves = new ArrayList<EvaluatedMove>(30);
 
         ArrayList<Move> moves;
         if (evaluatedMoves == null) {
             moves = field.getLegalMoves();
-            orderMoves(moves);
+            moveOrderer.orderMoves(moves, field.getBoard(), 0, field.getLastMove(), isBlacksTurn);
         } else {
             moves = evaluatedMoves.stream().map(EvaluatedMove::move).collect(Collectors.toCollection(ArrayList::new));
         }
 
         for (int i = 0; i < moves.size(); i++) {
             var move = moves.get(i);
+            int moveAlpha = alpha;
+            int moveBeta = beta;
+            if (bestMoves.size() == multiPV) {
+                if (isBlacksTurn)
+                    moveBeta = Math.min(beta, bestMoves.getLast().evaluation());
+                else
+                    moveAlpha = Math.max(alpha, bestMoves.getLast().evaluation());
+            }
+            if (moveBeta <= moveAlpha) {
+                for (int j = i; j < moves.size(); j++)
+                    otherMoves.add(new EvaluatedMove(moves.get(j), worstScore));
+                break;
+            }
 
-            int eval;
-            try {
-                field.forceMove(move, false);
+            field.forceMove(move, false);
+            executedMoves++;
+            int eval = minimax(maxDepth - 1, 1, moveAlpha, moveBeta, true);
+            field.undoMove();
+            if (stopped) return;
+
+            if (isBlacksTurn ? eval >= moveBeta : eval <= moveAlpha) {
+                otherMoves.add(new EvaluatedMove(move, eval));
+                continue;
+            }
+            // the score is exact, insert the move into the best moves
+            updatePrincipalVariation(0, move);
+            int index = 0;
+            while (index < bestMoves.size() && (isBlacksTurn ? bestMoves.get(index).evaluation() <= eval : bestMoves.get(index).evaluation() >= eval))
+                index++;
+            bestMoves.add(index, new EvaluatedMove(move, eval));
+            bestLines.add(index, List.of(Arrays.copyOf(principalVariations[0], principalVariationLengths[0])));
+            if (bestMoves.size() > multiPV) {
+                otherMoves.add(bestMoves.removeLast());
+                bestLines.removeLast();
+            }
+        }
+        otherMoves.sort((m1, m2) ->
+                isBlacksTurn ? Integer.compare(m1.evaluation(), m2.evaluation()) : Integer.compare(m2.evaluation(), m1.evaluation())
+        );
+        evaluatedMoves = bestMoves;
+        evaluatedMoves.addAll(otherMoves);
+        principalVariationLines = bestLines;
+    }
+
+    public ArrayList<EvaluatedMove> getBestMoves() {
+        return getBestMoves(DEFAULT_THINKING_TIME);
+    }
+
+    /**
+     * @return the switches and margins of the selective search, changes apply to the next search
+     */
+    public SearchSettings getSearchSettings() {
+        return searchSettings;
+    }
+
+    /**
+     * @param allowNullMove false to disable null move pruning in this node (after a null move and in verification searches)
+     */
+    private int minimax(int depth, int ply, int alpha, int beta, boolean allowNullMove) {
+        clearPrincipalVariation(ply);
+        if (field.getGameState() != GameState.NOT_DECIDED) return evaluateCurrentPosition(ply);
+        if (tablebases != null && field.getPieceCount() <= tablebases.getMaxPieces()) {
+            int tablebaseScore = getTablebaseScore(ply);
+            if (tablebaseScore != Tablebases.NOT_FOUND) return tablebaseScore;
+        }
+        if (depth <= 0) return quiescence(ply, 0, alpha, beta);
+        if (shouldStop()) return 0;
+
+        boolean isBlacksTurn = field.isBlackTurn();
+        boolean isInCheck = field.getPlayerInCheck() != null;
+        int staticEvaluation = isInCheck ? 0 : getStaticEvaluation();
+
+        if (isInCheck == false) {
+            // reverse futility pruning: the position is so good that even giving away a margin still beats the bound
+            int reverseFutilityMargin = SearchSettings.getMargin(searchSettings.getReverseFutilityMargins(), depth);
+            if (searchSettings.isReverseFutilityPruning() && reverseFutilityMargin >= 0) {
+                if (isBlacksTurn ? staticEvaluation + reverseFutilityMargin <= alpha : staticEvaluation - reverseFutilityMargin >= beta)
+                    return staticEvaluation;
+            }
+
+            // razoring: the position is so bad that only tactics can save it, which the quiescence search will find
+            int razoringMargin = SearchSettings.getMargin(searchSettings.getRazoringMargins(), depth);
+            if (searchSettings.isRazoring() && razoringMargin >= 0) {
+                if (isBlacksTurn ? staticEvaluation - razoringMargin > beta : staticEvaluation + razoringMargin < alpha) {
+                    int score = isBlacksTurn
+                            ? quiescence(ply, 0, beta - 1, beta)
+                            : quiescence(ply, 0, alpha, alpha + 1);
+                    if (stopped) return 0;
+                    if (isBlacksTurn ? score >= beta : score <= alpha)
+                        return score;
+                }
+            }
+        }
+
+        if (searchSettings.isNullMovePruning() && allowNullMove && depth >= NULL_MOVE_MIN_DEPTH && isInCheck == false) {
+            int sidePhase = field.getPhase(isBlacksTurn ? Player.BLACK : Player.WHITE);
+            if (sidePhase > 0 && (isBlacksTurn ? staticEvaluation <= alpha : staticEvaluation >= beta)) {
+                int reduction = 2 + depth / 4;
+                field.forceNullMove();
                 executedMoves++;
-                eval = minimax(maxDepth - 1, alpha, beta, endNanoTime);
-            } catch (RuntimeException e) {
-                // look at the exception message for further info
-                eval = isBlacksTurn ? Integer.MAX_VALUE : Integer.MIN_VALUE;
+                // null window at the bound this node has to fail against
+                int nullScore = isBlacksTurn
+                        ? minimax(Math.max(depth - 1 - reduction, 0), ply + 1, alpha, alpha + 1, false)
+                        : minimax(Math.max(depth - 1 - reduction, 0), ply + 1, beta - 1, beta, false);
+                field.undoMove();
+                if (stopped) return 0;
+
+                if (isBlacksTurn ? nullScore <= alpha : nullScore >= beta) {
+                    boolean verified = true;
+                    if (sidePhase <= NULL_MOVE_VERIFICATION_PHASE) {
+                        // zugzwang-prone: only trust the cutoff if a reduced search without null moves confirms it
+                        int verificationScore = minimax(Math.max(depth - reduction, 1), ply, alpha, beta, false);
+                        if (stopped) return 0;
+                        verified = isBlacksTurn ? verificationScore <= alpha : verificationScore >= beta;
+                    }
+                    if (verified)
+                        return isMateScore(nullScore) ? (isBlacksTurn ? alpha : beta) : nullScore;
+                }
+            }
+        }
+
+        // futility pruning: quiet moves cannot lift a hopeless static evaluation above the bound this close to the horizon
+        int futilityMargin = SearchSettings.getMargin(searchSettings.getFutilityMargins(), depth);
+        boolean isFutile = searchSettings.isFutilityPruning() && isInCheck == false && futilityMargin >= 0
+                && (isBlacksTurn ? staticEvaluation - futilityMargin >= beta : staticEvaluation + futilityMargin <= alpha);
+
+        int bestScore = isBlacksTurn ? Integer.MAX_VALUE : Integer.MIN_VALUE;
+        var moves = field.getLegalMoves();
+        var previousMove = field.getLastMove();
+        moveOrderer.orderMoves(moves, field.getBoard(), ply, previousMove, isBlacksTurn);
+
+        var quietsTried = new Move[moves.size()];
+        int quietCount = 0;
+        for (int i = 0; i < moves.size(); i++) {
+            var move = moves.get(i);
+            boolean isQuiet = MoveOrderer.isQuiet(move);
+            boolean isLateQuietMove = isQuiet && isInCheck == false && moveOrderer.isKiller(move, ply) == false;
+
+            if (isFutile && isQuiet && i > 0 && isMateScore(bestScore) == false)
+                continue;
+
+            // late move pruning: at shallow depth, quiet moves this far down the ordering are very unlikely to matter
+            if (searchSettings.isLateMovePruning() && isLateQuietMove && depth <= LATE_MOVE_PRUNING_MAX_DEPTH
+                    && i >= 3 + depth * depth && isMateScore(bestScore) == false)
+                continue;
+
+            field.forceMove(move, false);
+            executedMoves++;
+            int reduction = 0;
+            if (searchSettings.isLateMoveReductions() && isLateQuietMove && depth >= LATE_MOVE_REDUCTION_MIN_DEPTH
+                    && i >= LATE_MOVE_REDUCTION_MIN_MOVE_NUMBER && field.getPlayerInCheck() == null)
+                reduction = Math.min(LATE_MOVE_REDUCTIONS[Math.min(depth, 63)][Math.min(i, 63)], depth - 2);
+
+            int eval;
+            if (reduction > 0) {
+                // reduced null window search, re-searched at full depth if the move turns out to be better than expected
+                eval = isBlacksTurn
+                        ? minimax(depth - 1 - reduction, ply + 1, beta - 1, beta, true)
+                        : minimax(depth - 1 - reduction, ply + 1, alpha, alpha + 1, true);
+                if (stopped == false && (isBlacksTurn ? eval < beta : eval > alpha))
+                    eval = minimax(depth - 1, ply + 1, alpha, beta, true);
+            } else {
+                eval = minimax(depth - 1, ply + 1, alpha, beta, true);
             }
             field.undoMove();
+            if (stopped) return 0;
 
-            if (isBlacksTurn ? eval < bestScore : eval > bestScore)
+            if (isBlacksTurn ? eval < bestScore : eval > bestScore) {
                 bestScore = eval;
-
-            newEvaluatedMoves.add(new EvaluatedMove(move, eval));
+                updatePrincipalVariation(ply, move);
+            }
 
             //alpha-beta pruning
             if (isBlacksTurn)
@@ -110,49 +668,66 @@ public class Engine {
             else
                 alpha = Math.max(alpha, eval);
             if (beta <= alpha) {
-                for (int j = i + 1; j < moves.size(); j++)
-                    newEvaluatedMoves.add(new EvaluatedMove(moves.get(j), worstScore));
+                cutoffs++;
+                if (i == 0) firstMoveCutoffs++;
+                if (isQuiet)
+                    moveOrderer.recordCutoff(move, quietsTried, quietCount, field.getBoard(), ply, depth, previousMove, isBlacksTurn);
                 break;
             }
+            if (isQuiet)
+                quietsTried[quietCount++] = move;
         }
-        evaluatedMoves = newEvaluatedMoves;
-        evaluatedMoves.sort((m1, m2) ->
-                field.isBlackTurn() ? Integer.compare(m1.evaluation(), m2.evaluation()) : Integer.compare(m2.evaluation(), m1.evaluation())
-        );
-    }
-
-    public ArrayList<EvaluatedMove> getBestMoves() {
-        return getBestMoves(DEFAULT_THINKING_TIME);
+        return bestScore;
     }
 
-    private int minimax(int depth, int alpha, int beta, long endTime) throws InterruptedException, TimeoutException {
-        if (depth == 0 || field.getGameState() != GameState.NOT_DECIDED) return evaluateCurrentPosition(depth);
-        if (Thread.interrupted()) throw new InterruptedException();
-        if (System.nanoTime() > endTime) throw new TimeoutException();
+    /**
+     * Searches captures and promotions (or all evasions when in check) until the position is quiet,
+     * so the evaluation is never taken in the middle of an exchange.
+     *
+     * @param quiescenceDepth the number of plies already searched beyond the horizon
+     */
+    private int quiescence(int ply, int quiescenceDepth, int alpha, int beta) {
+        // the principal variation ends at the horizon, captures after it are not part of it
+        clearPrincipalVariation(ply);
+        if (ply > selectiveDepth) selectiveDepth = ply;
+        if (field.getGameState() != GameState.NOT_DECIDED || quiescenceDepth >= MAX_QUIESCENCE_DEPTH)
+            return evaluateCurrentPosition(ply, alpha, beta);
+        if (shouldStop()) return 0;
+        quiescenceNodes++;
 
         boolean isBlacksTurn = field.isBlackTurn();
+        boolean isInCheck = field.getPlayerInCheck() != null;
         int bestScore = isBlacksTurn ? Integer.MAX_VALUE : Integer.MIN_VALUE;
+
+        if (isInCheck == false) {
+            // stand pat: the player to move does not have to capture.
+            // Only the side of the window matters here, so the evaluation may stop early if it is far outside
+            int standPat = evaluateCurrentPosition(ply, alpha, beta);
+            if (isBlacksTurn ? standPat <= alpha : standPat >= beta)
+                return standPat;
+            if (isBlacksTurn)
+                beta = Math.min(beta, standPat);
+            else
+                alpha = Math.max(alpha, standPat);
+            bestScore = standPat;
+        }
+
         var moves = field.getLegalMoves();
-        orderMoves(moves);
+        moveOrderer.orderMoves(moves, field.getBoard(), ply, field.getLastMove(), isBlacksTurn);
         for (var move : moves) {
+            // the ordering puts captures and promotions first
+            if (isInCheck == false && MoveOrderer.isQuiet(move))
+                break;
 
-            int eval;
-            try {
-                field.forceMove(move, false);
-                executedMoves++;
-                eval = minimax(depth - 1, alpha, beta, endTime);
-            } catch (RuntimeException e) {
-                // look at the exception message for further info
-                eval = isBlacksTurn ? Integer.MAX_VALUE : Integer.MIN_VALUE;
-            }
+            field.forceMove(move, false);
+            executedMoves++;
+            int eval = quiescence(ply + 1, quiescenceDepth + 1, alpha, beta);
             field.undoMove();
+            if (stopped) return 0;
 
             if (isBlacksTurn ? eval < bestScore : eval > bestScore)
                 bestScore = eval;
-            if (depth == maxDepth)
-                evaluatedMoves.add(new EvaluatedMove(move, eval));
 
-            //alpha-beta pruning
             if (isBlacksTurn)
                 beta = Math.min(beta, eval);
             else
@@ -162,51 +737,157 @@ public class Engine {
         return bestScore;
     }
 
-    private void orderMoves(ArrayList<Move> legalMoves) {
-        legalMoves.sort((move1, move2) -> {
-            if (move1.isCapture() != move2.isCapture()) return move1.isCapture() ? -1 : 1;
-            return 0;
-        });
+    private int evaluateCurrentPosition(int ply) {
+        return evaluateCurrentPosition(ply, Integer.MIN_VALUE, Integer.MAX_VALUE);
     }
 
-
-    private int evaluateCurrentPosition(int depth) {
+    /**
+     * @see Evaluator#evaluate(Field, int, int)
+     */
+    private int evaluateCurrentPosition(int ply, int alpha, int beta) {
         evaluatedPositions++;
         if (field.getGameState() != GameState.NOT_DECIDED) {
             if (field.getGameState() == GameState.DRAW)
                 return 0;
             if (field.getGameState() == GameState.BLACK_WIN)
-                return Integer.MIN_VALUE + maxDepth - depth;
+                return Integer.MIN_VALUE + ply;
             if (field.getGameState() == GameState.WHITE_WIN)
-                return Integer.MAX_VALUE - maxDepth + depth;
+                return Integer.MAX_VALUE - ply;
         }
 
-        int material = field.getPieceEvaluation();
-        int positional = getPositionalValue();
-        return material + positional;
+        return getStaticEvaluation(alpha, beta);
     }
 
-    private int getPositionalValue() {
-        int positional = 0;
-        byte[] board = field.getBoard();
-        for (int i = 0; i < 64; i++) {
-            byte piece = board[i];
-            if (piece == PieceUtil.EMPTY) continue;
+    private int getStaticEvaluation() {
+        return getStaticEvaluation(Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
 
-            int pieceType;
-            if (PieceUtil.isPawn(piece)) pieceType = 0;
-            else if (PieceUtil.isKnight(piece)) pieceType = 1;
-            else if (PieceUtil.isBishop(piece)) pieceType = 2;
-            else if (PieceUtil.isRook(piece)) pieceType = 3;
-            else if (PieceUtil.isQueen(piece)) pieceType = 4;
-            else if (PieceUtil.isKing(piece)) pieceType = 5;
-            else continue;
+    /**
+     * Evaluates the position with the {@link Evaluator}, without looking at the game state.
+     * Evaluations are looked up in and stored to the {@link EvaluationCache}, lazy ones are bounds and are not stored.
+     *
+     * @return the evaluation, positive if white is better, or a bound outside the window (see {@link Evaluator#evaluate(Field, int, int)})
+     */
+    private int getStaticEvaluation(int alpha, int beta) {
+        long key = field.getZobristKey();
+        long cached = evaluationCache.probe(key);
+        evaluationProbes++;
+        if (cached != EvaluationCache.MISS) {
+            evaluationHits++;
+            return (int) cached;
+        }
+        int evaluation = evaluator.evaluate(field, alpha, beta);
+        if (evaluator.isLastEvaluationLazy()) {
+            lazyEvaluations++;
+            return evaluation;
+        }
+        evaluationCache.store(key, evaluation);
+        return evaluation;
+    }
 
-            if (PieceUtil.isWhite(piece))
-                positional += PositionTables.whitePieceSquareTables[pieceType][i];
-            else
-                positional -= PositionTables.blackPieceSquareTables[pieceType][i];
+    private void clearPrincipalVariation(int ply) {
+        if (ply < MoveOrderer.MAX_PLY) principalVariationLengths[ply] = ply;
+    }
+
+    /**
+     * Makes the move followed by the principal variation of the next ply the principal variation of the ply
+     */
+    private void updatePrincipalVariation(int ply, Move move) {
+        if (ply >= MoveOrderer.MAX_PLY - 1) return;
+        Move[] principalVariation = principalVariations[ply];
+        principalVariation[ply] = move;
+        int childLength = Math.max(principalVariationLengths[ply + 1], ply + 1);
+        System.arraycopy(principalVariations[ply + 1], ply + 1, principalVariation, ply + 1, childLength - ply - 1);
+        principalVariationLengths[ply] = childLength;
+    }
+
+    /**
+     * @return the best line found by the last completed iteration, starting with the best move (empty before the first iteration completed)
+     */
+    public List<Move> getPrincipalVariation() {
+        return principalVariationLines.isEmpty() ? List.of() : principalVariationLines.getFirst();
+    }
+
+    /**
+     * @return the lines of the best root moves found by the last completed iteration, in the order of the moves returned by the search
+     */
+    public List<List<Move>> getPrincipalVariations() {
+        return principalVariationLines;
+    }
+
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    public int getMultiPV() {
+        return multiPV;
+    }
+
+    /**
+     * Sets how many of the best root moves get an exact score and their own principal variation, applies to the next search.
+     * Every additional line makes the search slower, as fewer root moves can be refuted by a cutoff.
+     */
+    public void setMultiPV(int multiPV) {
+        this.multiPV = Math.max(multiPV, 1);
+    }
+
+    /**
+     * Counts the node and checks the stop flag and the hard time limit every {@link TimeManager#NODE_CHECK_INTERVAL} nodes,
+     * progress reports to the {@link SearchListener} are sent from here as well.
+     * Once this returned true, every node returns without searching, the caller has to discard the result.
+     */
+    private boolean shouldStop() {
+        if (stopped) return true;
+        if ((++nodes & (TimeManager.NODE_CHECK_INTERVAL - 1)) != 0) return false;
+        if (stopFlag.get() || nodes >= nodeLimit || timeManager.isHardLimitReached())
+            stopped = true;
+        else if (searchListener != null && searchStats.getLastIteration() != null && System.nanoTime() - lastReportTime >= REPORT_INTERVAL) {
+            lastReportTime = System.nanoTime();
+            searchListener.searchProgress(createSearchInfo());
         }
-        return positional;
+        return stopped;
+    }
+
+    /**
+     * Stops the running search as soon as possible, it returns the result of the last completed iteration. Can be called from any thread.
+     */
+    public void stop() {
+        stopFlag.set(true);
+    }
+
+    /**
+     * Resets the stop flag, so the next search can run. Called by whoever submits the search, before it checks if the search
+     * is still wanted, as a stop in between would otherwise be lost.
+     */
+    public void clearStop() {
+        stopFlag.set(false);
+    }
+
+    /**
+     * Lets engines share one stop flag, so they can be stopped together. The flag is only reset by {@link #clearStop()}.
+     */
+    public void setStopFlag(AtomicBoolean stopFlag) {
+        this.stopFlag = stopFlag;
+    }
+
+    public AtomicBoolean getStopFlag() {
+        return stopFlag;
+    }
+
+    /**
+     * @param evaluation the evaluation of the best move, positive if white is better
+     * @return true if the search found a mate within the mate limit for the player to move
+     */
+    private boolean isMateLimitReached(int evaluation) {
+        if (limits.getMate() <= 0) return false;
+        boolean isBlacksTurn = field.isBlackTurn();
+        if (isBlacksTurn ? evaluation > -MATE_THRESHOLD : evaluation < MATE_THRESHOLD) return false;
+        // mate scores count the plies from the root
+        long plies = isBlacksTurn ? (long) evaluation - Integer.MIN_VALUE : Integer.MAX_VALUE - (long) evaluation;
+        return (plies + 1) / 2 <= limits.getMate();
+    }
+
+    private static boolean isMateScore(int score) {
+        return score >= MATE_THRESHOLD || score <= -MATE_THRESHOLD;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,80 @@
+package at.htlhl.chess.engine;
+
+import java.util.Arrays;
+
+/**
+ * Direct mapped cache of static evaluations, indexed by the Zobrist key of the position (see {@link at.htlhl.chess.boardlogic.Field#getZobristKey()}).
+ * It is shared by all engines and works without locks: every entry stores the key XORed with the data next to the data itself,
+ * so an entry that is torn by two threads writing at the same time no longer matches its key and is treated as a miss.
+ * Only evaluations that depend on nothing but the position may be stored.
+ */
+public class EvaluationCache {
+
+    /**
+     * Returned by {@link #probe(long)} if the position is not cached, it is outside the range of int evaluations
+     */
+    public static final long MISS = Long.MIN_VALUE;
+
+    private static final int DEFAULT_SIZE = 1 << 18;
+
+    /**
+     * Marks an entry as filled, so that the empty entries are no hits for the key 0
+     */
+    private static final long VALID = 1L << 32;
+
+    private static final EvaluationCache SHARED = new EvaluationCache(DEFAULT_SIZE);
+
+    /**
+     * Two longs per entry: the key XORed with the data and the data
+     */
+    private final long[] table;
+    private final int mask;
+
+    /**
+     * @param size the number of entries, must be a power of two
+     */
+    public EvaluationCache(int size) {
+        if (Integer.bitCount(size) != 1)
+            throw new IllegalArgumentException("Size must be a power of two: " + size);
+        table = new long[size * 2];
+        mask = size - 1;
+    }
+
+    /**
+     * @return the cache shared by all engines that are not given their own
+     */
+    public static EvaluationCache getShared() {
+        return SHARED;
+    }
+
+    /**
+     * Looks up the evaluation of a position
+     *
+     * @return the cached evaluation, or {@link #MISS} if it is not cached
+     */
+    public long probe(long key) {
+        int index = ((int) key & mask) * 2;
+        long check = table[index];
+        long data = table[index + 1];
+        if ((check ^ data) != key || (data & VALID) == 0)
+            return MISS;
+        return (int) data;
+    }
+
+    /**
+     * Stores the evaluation of a position, replacing whatever was stored in its entry
+     */
+    public void store(long key, int evaluation) {
+        int index = ((int) key & mask) * 2;
+        long data = VALID | (evaluation & 0xFFFFFFFFL);
+        table[index] = key ^ data;
+        table[index + 1] = data;
+    }
+
+    /**
+     * Removes all entries, use this when the evaluation itself changed
+     */
+    public void clear() {
+        Arrays.fill(table, 0);
+    }
+}
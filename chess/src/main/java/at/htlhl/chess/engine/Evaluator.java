@@ -0,0 +1,46 @@
+package at.htlhl.chess.engine;
+
+import at.htlhl.chess.boardlogic.Field;
+
+/**
+ * Static evaluation of a position, used by the {@link Engine} at the leaves of its search.
+ * An evaluator belongs to one engine and is only called from the thread that engine searches on.
+ */
+public interface Evaluator {
+
+    /**
+     * Evaluates the position without looking at the game state.
+     * The result must only depend on the position, as it is cached by its Zobrist key.
+     *
+     * @return the evaluation in centipawns, positive if white is better
+     */
+    int evaluate(Field field);
+
+    /**
+     * Evaluates like {@link #evaluate(Field)}, but may stop after the cheap terms if they are so far outside the window
+     * that the expensive ones cannot bring the evaluation back into it. The search only needs to know on which side of the window it is then.
+     * Whether the last evaluation stopped early is told by {@link #isLastEvaluationLazy()}.
+     *
+     * @param alpha the lower end of the window, in centipawns from the view of white
+     * @param beta  the upper end of the window, in centipawns from the view of white
+     * @return the evaluation, or after stopping early a bound: at most alpha but not below the full evaluation,
+     * or at least beta but not above the full evaluation
+     */
+    default int evaluate(Field field, int alpha, int beta) {
+        return evaluate(field);
+    }
+
+    /**
+     * @return true if the last call of {@link #evaluate(Field, int, int)} returned a bound instead of the full evaluation
+     */
+    default boolean isLastEvaluationLazy() {
+        return false;
+    }
+
+    /**
+     * Called whenever the engine starts working on a new field, before the first evaluation of it.
+     * Evaluators that keep state about the position can start tracking the field here.
+     */
+    default void attach(Field field) {
+    }
+}
@@ -0,0 +1,364 @@
+package at.htlhl.chess.engine;
+
+import at.htlhl.chess.boardlogic.Field;
+import at.htlhl.chess.boardlogic.Move;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Proves forced mates with depth-first proof-number search (df-pn), e.g. to check that a puzzle has a mate and that it is unique.
+ * <p>
+ * Unlike the alpha-beta search of the {@link Engine}, which has to search every move to the full depth before it sees a mate,
+ * proof-number search always expands the position that is cheapest to prove or disprove: the proof number of a position is the
+ * number of positions that still have to be proven for a mate, the disproof number the number that have to be disproven against it.
+ * The attacker needs one move that mates, the defender needs one move that escapes, so forcing lines are searched first
+ * and most of the tree is never visited.
+ * <p>
+ * The search is limited to a number of moves: positions of the attacker have an odd number of plies left, the ones of the defender an even one,
+ * and a defender that is not mated when no plies are left has escaped. Proofs and disproofs are kept in a transposition table
+ * together with the plies they hold for. Draws by repetition and the fifty move rule are ignored, as they depend on the path and
+ * would make the stored results wrong. A solver is not thread safe, use one per thread.
+ */
+public class MateSolver {
+
+    /**
+     * A proof or disproof number that means the position is disproven or proven
+     */
+    private static final int INFINITY = 100_000_000;
+    private static final int DEFAULT_TABLE_SIZE = 1 << 20;
+    private static final long DEFAULT_NODE_LIMIT = 10_000_000;
+
+    public enum Status {
+        MATE,
+        NO_MATE,
+        /**
+         * The node limit was reached before the search was finished
+         */
+        UNKNOWN
+    }
+
+    /**
+     * @param status the result of the search
+     * @param line   a mating line starting with the move of the attacker, in which the defender plays the longest defence the search found.
+     *               Empty if there is no mate.
+     * @param nodes  the number of positions searched
+     */
+    public record Result(Status status, List<Move> line, long nodes) {
+
+        public boolean isMate() {
+            return status == Status.MATE;
+        }
+
+        /**
+         * @return the number of moves of the attacker until mate, 0 if there is no mate
+         */
+        public int getMateLength() {
+            return (line.size() + 1) / 2;
+        }
+    }
+
+    /**
+     * The transposition table: for unsolved positions the plies left when the numbers were stored,
+     * for proven ones the plies to mate and for disproven ones the plies that were not enough
+     */
+    private final long[] keys;
+    private final int[] proofNumbers;
+    private final int[] disproofNumbers;
+    private final byte[] plies;
+    private final int mask;
+
+    private long nodeLimit = DEFAULT_NODE_LIMIT;
+    private Field field;
+    private long nodes;
+    private boolean aborted;
+
+    /**
+     * The numbers of the last position looked up or searched, set by {@link #lookup(long, int, int, int)} and {@link #search(int, int, int)}
+     */
+    private int proofNumber;
+    private int disproofNumber;
+    private int mateDistance;
+
+    public MateSolver() {
+        this(DEFAULT_TABLE_SIZE);
+    }
+
+    /**
+     * @param tableSize the number of entries of the transposition table, must be a power of two
+     */
+    public MateSolver(int tableSize) {
+        if (Integer.bitCount(tableSize) != 1)
+            throw new IllegalArgumentException("Size must be a power of two: " + tableSize);
+        keys = new long[tableSize];
+        proofNumbers = new int[tableSize];
+        disproofNumbers = new int[tableSize];
+        plies = new byte[tableSize];
+        mask = tableSize - 1;
+    }
+
+    /**
+     * Looks for the shortest forced mate of the player to move, trying mates in 1, 2, ... moves.
+     * The field is not changed.
+     *
+     * @param maxMoves the longest mate to look for, in moves of the player to move
+     */
+    public Result solve(Field field, int maxMoves) {
+        start(field);
+        for (int moves = 1; moves <= maxMoves; moves++) {
+            int remaining = moves * 2 - 1;
+            if (prove(remaining))
+                return new Result(Status.MATE, getLine(remaining), nodes);
+            if (aborted)
+                return new Result(Status.UNKNOWN, List.of(), nodes);
+        }
+        return new Result(Status.NO_MATE, List.of(), nodes);
+    }
+
+    /**
+     * Finds all moves of the player to move that force a mate in at most the given number of moves.
+     * A puzzle has a unique solution if there is exactly one. The field is not changed.
+     *
+     * @return the mating moves, or null if the node limit was reached
+     */
+    public List<Move> getMatingMoves(Field field, int maxMoves) {
+        start(field);
+        var matingMoves = new ArrayList<Move>();
+        for (Move move : new ArrayList<>(this.field.getLegalMoves())) {
+            this.field.forceMove(move, false);
+            boolean mates = isMated() || (maxMoves > 1 && this.field.getLegalMoves().isEmpty() == false && prove(maxMoves * 2 - 2));
+            this.field.undoMove();
+            if (aborted)
+                return null;
+            if (mates)
+                matingMoves.add(move);
+        }
+        return matingMoves;
+    }
+
+    /**
+     * @param nodeLimit the number of positions after which a search gives up with {@link Status#UNKNOWN}
+     */
+    public void setNodeLimit(long nodeLimit) {
+        this.nodeLimit = nodeLimit;
+    }
+
+    /**
+     * Forgets all positions, the table is kept between searches otherwise
+     */
+    public void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(proofNumbers, 0);
+        Arrays.fill(disproofNumbers, 0);
+        Arrays.fill(plies, (byte) 0);
+    }
+
+    private void start(Field field) {
+        this.field = field.clone();
+        nodes = 0;
+        aborted = false;
+    }
+
+    /**
+     * Searches the current position until it is proven or disproven
+     *
+     * @param remaining the plies left, odd if the attacker is to move
+     * @return true if it is proven
+     */
+    private boolean prove(int remaining) {
+        if (remaining > Byte.MAX_VALUE)
+            throw new IllegalArgumentException("Mates longer than " + Byte.MAX_VALUE / 2 + " moves are not supported");
+        if (field.getLegalMoves().isEmpty())
+            return remaining % 2 == 0 && isMated();
+        search(remaining, INFINITY, INFINITY);
+        return proofNumber == 0;
+    }
+
+    /**
+     * Expands the current position until its proof number reaches the proof threshold or its disproof number reaches the disproof threshold,
+     * then stores the numbers in the table and in {@link #proofNumber} and {@link #disproofNumber}.
+     * The position must have legal moves and at least one ply left.
+     */
+    private void search(int remaining, int proofThreshold, int disproofThreshold) {
+        nodes++;
+        boolean attacker = remaining % 2 == 1;
+        long key = field.getZobristKey();
+        var moves = new ArrayList<>(field.getLegalMoves());
+        int count = moves.size();
+        long[] childKeys = new long[count];
+        // the numbers of children that end the game or the search, the others are looked up in the table
+        int[] terminalProofNumbers = new int[count];
+        int[] initialProofNumbers = new int[count];
+        int[] initialDisproofNumbers = new int[count];
+        for (int i = 0; i < count; i++) {
+            field.forceMove(moves.get(i), false);
+            childKeys[i] = field.getZobristKey();
+            int childMoves = field.getLegalMoves().size();
+            terminalProofNumbers[i] = -1;
+            if (childMoves == 0 || remaining == 1)
+                terminalProofNumbers[i] = attacker && isMated() ? 0 : INFINITY;
+            // the fewer moves the player to move has, the easier the position is to prove for the attacker
+            initialProofNumbers[i] = attacker ? Math.max(childMoves, 1) : 1;
+            initialDisproofNumbers[i] = attacker ? 1 : Math.max(childMoves, 1);
+            field.undoMove();
+        }
+
+        int[] childProofNumbers = new int[count];
+        int[] childDisproofNumbers = new int[count];
+        int[] childDistances = new int[count];
+        while (true) {
+            for (int i = 0; i < count; i++) {
+                if (terminalProofNumbers[i] >= 0) {
+                    proofNumber = terminalProofNumbers[i];
+                    disproofNumber = proofNumber == 0 ? INFINITY : 0;
+                    mateDistance = 0;
+                } else {
+                    lookup(childKeys[i], remaining - 1, initialProofNumbers[i], initialDisproofNumbers[i]);
+                }
+                childProofNumbers[i] = proofNumber;
+                childDisproofNumbers[i] = disproofNumber;
+                childDistances[i] = mateDistance;
+            }
+
+            // the attacker needs one proven move, the defender one disproven move
+            int best = 0;
+            int secondBest = INFINITY;
+            int sum = 0;
+            int[] minimized = attacker ? childProofNumbers : childDisproofNumbers;
+            int[] summed = attacker ? childDisproofNumbers : childProofNumbers;
+            for (int i = 0; i < count; i++) {
+                sum = Math.min(sum + summed[i], INFINITY);
+                if (minimized[i] < minimized[best]) {
+                    secondBest = minimized[best];
+                    best = i;
+                } else if (i != best) {
+                    secondBest = Math.min(secondBest, minimized[i]);
+                }
+            }
+            proofNumber = attacker ? minimized[best] : sum;
+            disproofNumber = attacker ? sum : minimized[best];
+            if (proofNumber >= proofThreshold || disproofNumber >= disproofThreshold || aborted)
+                break;
+            if (nodes >= nodeLimit) {
+                aborted = true;
+                break;
+            }
+
+            int childProofThreshold;
+            int childDisproofThreshold;
+            if (attacker) {
+                childProofThreshold = Math.min(proofThreshold, secondBest + 1);
+                childDisproofThreshold = disproofThreshold - disproofNumber + childDisproofNumbers[best];
+            } else {
+                childProofThreshold = proofThreshold - proofNumber + childProofNumbers[best];
+                childDisproofThreshold = Math.min(disproofThreshold, secondBest + 1);
+            }
+            field.forceMove(moves.get(best), false);
+            search(remaining - 1, childProofThreshold, childDisproofThreshold);
+            field.undoMove();
+        }
+
+        mateDistance = 0;
+        if (proofNumber == 0) {
+            // the attacker takes the fastest mate, the defender the slowest
+            mateDistance = attacker ? Integer.MAX_VALUE : 0;
+            for (int i = 0; i < count; i++)
+                if (childProofNumbers[i] == 0)
+                    mateDistance = attacker ? Math.min(mateDistance, childDistances[i] + 1) : Math.max(mateDistance, childDistances[i] + 1);
+        }
+        store(key, remaining);
+    }
+
+    /**
+     * Reads the numbers of a position into {@link #proofNumber}, {@link #disproofNumber} and {@link #mateDistance}
+     *
+     * @param initialProofNumber    the proof number of positions that are not in the table
+     * @param initialDisproofNumber the disproof number of positions that are not in the table
+     */
+    private void lookup(long key, int remaining, int initialProofNumber, int initialDisproofNumber) {
+        int index = index(key);
+        proofNumber = initialProofNumber;
+        disproofNumber = initialDisproofNumber;
+        mateDistance = 0;
+        if (keys[index] != key) return;
+        int storedPlies = plies[index];
+        if (proofNumbers[index] == 0) {
+            // a mate in fewer plies is also a mate with more plies left
+            if (storedPlies <= remaining) {
+                proofNumber = 0;
+                disproofNumber = INFINITY;
+                mateDistance = storedPlies;
+            }
+        } else if (disproofNumbers[index] == 0) {
+            // no mate with more plies left means no mate with fewer either
+            if (storedPlies >= remaining) {
+                proofNumber = INFINITY;
+                disproofNumber = 0;
+            }
+        } else if (storedPlies == remaining) {
+            proofNumber = proofNumbers[index];
+            disproofNumber = disproofNumbers[index];
+        }
+    }
+
+    private void store(long key, int remaining) {
+        int index = index(key);
+        keys[index] = key;
+        proofNumbers[index] = proofNumber;
+        disproofNumbers[index] = disproofNumber;
+        plies[index] = (byte) (proofNumber == 0 ? mateDistance : remaining);
+    }
+
+    private int index(long key) {
+        return (int) key & mask;
+    }
+
+    /**
+     * Follows the proof from the current position, which has to be proven, and returns the moves to the mate
+     */
+    private List<Move> getLine(int remaining) {
+        var line = new ArrayList<Move>();
+        while (remaining > 0 && field.getLegalMoves().isEmpty() == false) {
+            boolean attacker = remaining % 2 == 1;
+            Move chosen = null;
+            int chosenDistance = 0;
+            boolean complete = true;
+            for (Move move : new ArrayList<>(field.getLegalMoves())) {
+                field.forceMove(move, false);
+                int distance = -1;
+                if (isMated())
+                    distance = 0;
+                else if (field.getLegalMoves().isEmpty() == false) {
+                    lookup(field.getZobristKey(), remaining - 1, 1, 1);
+                    if (proofNumber == 0) distance = mateDistance;
+                }
+                field.undoMove();
+                if (distance < 0) {
+                    complete = false;
+                    continue;
+                }
+                if (chosen == null || (attacker ? distance < chosenDistance : distance > chosenDistance)) {
+                    chosen = move;
+                    chosenDistance = distance;
+                }
+            }
+            if (attacker ? chosen == null : complete == false) {
+                // the proof was overwritten in the table, prove the position again
+                if (prove(remaining) == false) break;
+                continue;
+            }
+            line.add(chosen);
+            field.forceMove(chosen, false);
+            remaining--;
+        }
+        return line;
+    }
+
+    /**
+     * @return true if the player to move is checkmated
+     */
+    private boolean isMated() {
+        return field.getLegalMoves().isEmpty() && field.getPlayerInCheck() != null;
+    }
+}
@@ -0,0 +1,215 @@
+package at.htlhl.chess.engine;
+
+import at.htlhl.chess.boardlogic.Move;
+import at.htlhl.chess.boardlogic.util.PieceUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Holds the move ordering state of one search: MVV-LVA capture scores, two killer moves per ply,
+ * a countermove table indexed by the previous move and a butterfly history table.
+ * Every {@link Engine} owns its own instance, so engines searching on different threads never share it.
+ */
+public class MoveOrderer {
+
+    public static final int MAX_PLY = 128;
+
+    private static final int CAPTURE_SCORE = 4_000_000;
+    private static final int PROMOTION_SCORE = 3_000_000;
+    private static final int FIRST_KILLER_SCORE = 2_000_000;
+    private static final int SECOND_KILLER_SCORE = 1_900_000;
+    private static final int COUNTER_MOVE_SCORE = 1_800_000;
+    private static final int MAX_HISTORY = 16_384;
+
+    /**
+     * Values of the piece types (in the order of {@link PieceUtil#getTypeIndex(byte)}) used for MVV-LVA
+     */
+    private static final int[] MVV_LVA_VALUES = {1, 3, 3, 5, 9, 20};
+
+    /**
+     * Two killer moves per ply, stored as encoded moves (see {@link #encode(Move)}), 0 if there is none
+     */
+    private final int[][] killers = new int[MAX_PLY][2];
+
+    /**
+     * The best reply to a move, indexed by the moved piece (color and type) and the target square of the previous move
+     */
+    private final int[][] counterMoves = new int[12][64];
+
+    /**
+     * Butterfly history indexed by the color to move, the starting square and the target square
+     */
+    private final int[][][] history = new int[2][64][64];
+
+    /**
+     * Encodes a move into an int, so it can be stored without keeping a reference to the move
+     *
+     * @return the encoded move, never 0
+     */
+    public static int encode(Move move) {
+        int promotion = PieceUtil.getTypeIndex(move.getPromotionPiece()) + 1;
+        return 1 + (move.getStartingSquare().getBoardIndex()
+                | move.getTargetSquare().getBoardIndex() << 6
+                | promotion << 12);
+    }
+
+    /**
+     * @return true if the move neither captures nor promotes
+     */
+    public static boolean isQuiet(Move move) {
+        return move.isCapture() == false
+                && move.isEnPassantMove() == false
+                && PieceUtil.isEmpty(move.getPromotionPiece());
+    }
+
+    /**
+     * @return true if the move is one of the killer moves of the ply
+     */
+    public boolean isKiller(Move move, int ply) {
+        if (ply >= MAX_PLY) return false;
+        int encoded = encode(move);
+        return killers[ply][0] == encoded || killers[ply][1] == encoded;
+    }
+
+    /**
+     * Resets the killer moves, which belong to the plies of one search. The history and counter moves stay useful in the next search of the same game.
+     */
+    public void clearKillers() {
+        for (int[] killer : killers) {
+            killer[0] = 0;
+            killer[1] = 0;
+        }
+    }
+
+    /**
+     * Resets the whole state, use this before searching a position of another game
+     */
+    public void clear() {
+        for (int[] killer : killers) {
+            killer[0] = 0;
+            killer[1] = 0;
+        }
+        for (int[] counterMove : counterMoves)
+            Arrays.fill(counterMove, 0);
+        for (int[][] colorHistory : history)
+            for (int[] fromHistory : colorHistory)
+                Arrays.fill(fromHistory, 0);
+    }
+
+    /**
+     * Ages the history between iterations, so that values from shallow iterations lose weight against deeper ones
+     */
+    public void ageHistory() {
+        for (int[][] colorHistory : history)
+            for (int[] fromHistory : colorHistory)
+                for (int i = 0; i < 64; i++)
+                    fromHistory[i] /= 2;
+    }
+
+    /**
+     * Sorts the moves from most to least promising
+     *
+     * @param moves        the moves to sort, sorted in place
+     * @param board        the board the moves will be executed on
+     * @param ply          the distance to the root of the search
+     * @param previousMove the move that lead to the current position, or null
+     * @param isBlacksTurn true if black is to move
+     */
+    public void orderMoves(ArrayList<Move> moves, byte[] board, int ply, Move previousMove, boolean isBlacksTurn) {
+        int size = moves.size();
+        int[] scores = new int[size];
+        int counterMove = getCounterMove(board, previousMove);
+        for (int i = 0; i < size; i++)
+            scores[i] = scoreMove(moves.get(i), board, ply, counterMove, isBlacksTurn);
+
+        // insertion sort, as move lists are short and mostly small
+        for (int i = 1; i < size; i++) {
+            Move move = moves.get(i);
+            int score = scores[i];
+            int j = i - 1;
+            while (j >= 0 && scores[j] < score) {
+                scores[j + 1] = scores[j];
+                moves.set(j + 1, moves.get(j));
+                j--;
+            }
+            scores[j + 1] = score;
+            moves.set(j + 1, move);
+        }
+    }
+
+    private int scoreMove(Move move, byte[] board, int ply, int counterMove, boolean isBlacksTurn) {
+        if (move.isCapture() || move.isEnPassantMove()) {
+            int victim = move.isEnPassantMove() ? 0 : PieceUtil.getTypeIndex(move.getCapturedPiece());
+            int attacker = PieceUtil.getTypeIndex(board[move.getStartingSquare().getBoardIndex()]);
+            return CAPTURE_SCORE + MVV_LVA_VALUES[victim] * 64 - MVV_LVA_VALUES[attacker];
+        }
+        if (PieceUtil.isEmpty(move.getPromotionPiece()) == false)
+            return PROMOTION_SCORE + MVV_LVA_VALUES[PieceUtil.getTypeIndex(move.getPromotionPiece())];
+
+        int encoded = encode(move);
+        if (ply < MAX_PLY) {
+            if (killers[ply][0] == encoded) return FIRST_KILLER_SCORE;
+            if (killers[ply][1] == encoded) return SECOND_KILLER_SCORE;
+        }
+        if (counterMove == encoded) return COUNTER_MOVE_SCORE;
+
+        return history[isBlacksTurn ? 1 : 0][move.getStartingSquare().getBoardIndex()][move.getTargetSquare().getBoardIndex()];
+    }
+
+    /**
+     * Updates killers, countermoves and history after a quiet move caused a cutoff
+     *
+     * @param move         the quiet move that caused the cutoff
+     * @param quietsTried  the quiet moves that were searched before the move without causing a cutoff
+     * @param quietCount   the number of valid entries in quietsTried
+     * @param board        the board before the move was executed
+     * @param ply          the distance to the root of the search
+     * @param depth        the remaining depth of the node
+     * @param previousMove the move that lead to the current position, or null
+     * @param isBlacksTurn true if black is to move
+     */
+    public void recordCutoff(Move move, Move[] quietsTried, int quietCount, byte[] board, int ply, int depth, Move previousMove, boolean isBlacksTurn) {
+        int encoded = encode(move);
+        if (ply < MAX_PLY && killers[ply][0] != encoded) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = encoded;
+        }
+
+        int counterMoveIndex = getCounterMoveIndex(board, previousMove);
+        if (counterMoveIndex >= 0)
+            counterMoves[counterMoveIndex][previousMove.getTargetSquare().getBoardIndex()] = encoded;
+
+        int bonus = Math.min(depth * depth, 400);
+        int[][] colorHistory = history[isBlacksTurn ? 1 : 0];
+        updateHistory(colorHistory, move, bonus);
+        for (int i = 0; i < quietCount; i++)
+            updateHistory(colorHistory, quietsTried[i], -bonus);
+    }
+
+    /**
+     * Adds the bonus and pulls the entry towards zero the closer it gets to {@link #MAX_HISTORY}, so it can never overflow
+     */
+    private void updateHistory(int[][] colorHistory, Move move, int bonus) {
+        int from = move.getStartingSquare().getBoardIndex();
+        int to = move.getTargetSquare().getBoardIndex();
+        colorHistory[from][to] += bonus - colorHistory[from][to] * Math.abs(bonus) / MAX_HISTORY;
+    }
+
+    private int getCounterMove(byte[] board, Move previousMove) {
+        int index = getCounterMoveIndex(board, previousMove);
+        if (index < 0) return 0;
+        return counterMoves[index][previousMove.getTargetSquare().getBoardIndex()];
+    }
+
+    /**
+     * @return the index of the piece that executed the previous move in {@link #counterMoves}, or -1 if there is no previous move
+     */
+    private int getCounterMoveIndex(byte[] board, Move previousMove) {
+        if (previousMove == null) return -1;
+        byte piece = board[previousMove.getTargetSquare().getBoardIndex()];
+        int type = PieceUtil.getTypeIndex(piece);
+        if (type < 0) return -1;
+        return PieceUtil.isWhite(piece) ? type : type + 6;
+    }
+}
@@ -0,0 +1,295 @@
+package at.htlhl.chess.engine;
+
+import at.htlhl.chess.boardlogic.BoardChangeListener;
+import at.htlhl.chess.boardlogic.Field;
+import at.htlhl.chess.boardlogic.util.PieceUtil;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An efficiently updatable neural network evaluation (NNUE) with HalfKP features:
+ * every non-king piece on every square, seen from each player relative to the square of their own king.
+ * The feature transformer output (the accumulator) of both players is kept up to date on every board change,
+ * by adding and subtracting the weight rows of the features that appear and disappear.
+ * Only a move of a player's own king refreshes that player's accumulator from scratch.
+ * The dense layers behind the accumulators are small and computed with the Vector API.
+ *
+ * <p>The weights are read from a little endian binary file:
+ * <pre>
+ * int   magic ({@link #MAGIC}), version ({@link #VERSION}), hidden size H, first dense size L1, second dense size L2
+ * short feature transformer biases [H], weights [{@link #FEATURES}][H]
+ * float first dense weights [L1][2H], biases [L1]
+ * float second dense weights [L2][L1], biases [L2]
+ * float output weights [L2], output bias, output scale (centipawns per output unit)
+ * </pre>
+ * The accumulator is quantized, so that {@link #ACTIVATION_LIMIT} corresponds to an activation of 1.
+ */
+public class NnueEvaluator implements Evaluator, BoardChangeListener {
+
+    public static final int MAGIC = 0x4E4E5442;
+    public static final int VERSION = 1;
+
+    /**
+     * Own and opponents pawn, knight, bishop, rook and queen
+     */
+    private static final int PIECE_FEATURES = 10;
+    public static final int FEATURES = 64 * PIECE_FEATURES * 64;
+    private static final int ACTIVATION_LIMIT = 127;
+
+    private static final VectorSpecies<Short> SHORT_SPECIES = ShortVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Float> FLOAT_SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    private final int hiddenSize;
+    private final int firstDenseSize;
+    private final int secondDenseSize;
+
+    private final short[] featureBiases;
+    private final short[] featureWeights;
+    private final float[] firstDenseWeights;
+    private final float[] firstDenseBiases;
+    private final float[] secondDenseWeights;
+    private final float[] secondDenseBiases;
+    private final float[] outputWeights;
+    private final float outputBias;
+    private final float outputScale;
+
+    /**
+     * The accumulators of white (index 0) and black (index 1)
+     */
+    private final short[][] accumulators;
+
+    /**
+     * The square of the king of each player (in the players orientation) the accumulator was computed for
+     */
+    private final int[] kingSquares = new int[2];
+
+    /**
+     * true if the king of the player moved, so the accumulator has to be refreshed before the next evaluation
+     */
+    private final boolean[] refreshNeeded = new boolean[2];
+
+    private Field field;
+
+    private final float[] input;
+    private final float[] firstDenseOutput;
+    private final float[] secondDenseOutput;
+
+    private NnueEvaluator(ByteBuffer buffer) throws IOException {
+        if (buffer.getInt() != MAGIC) throw new IOException("Not a network file");
+        int version = buffer.getInt();
+        if (version != VERSION) throw new IOException("Unsupported network version: " + version);
+        hiddenSize = buffer.getInt();
+        firstDenseSize = buffer.getInt();
+        secondDenseSize = buffer.getInt();
+        if (hiddenSize <= 0 || firstDenseSize <= 0 || secondDenseSize <= 0)
+            throw new IOException("Invalid layer sizes: " + hiddenSize + ", " + firstDenseSize + ", " + secondDenseSize);
+
+        long expectedBytes = 5L * Integer.BYTES
+                + (long) hiddenSize * (FEATURES + 1) * Short.BYTES
+                + ((long) firstDenseSize * (2 * hiddenSize + 1) + (long) secondDenseSize * (firstDenseSize + 2) + 2) * Float.BYTES;
+        if (buffer.capacity() != expectedBytes)
+            throw new IOException("Network file has " + buffer.capacity() + " bytes, expected " + expectedBytes);
+
+        featureBiases = readShorts(buffer, hiddenSize);
+        featureWeights = readShorts(buffer, FEATURES * hiddenSize);
+        firstDenseWeights = readFloats(buffer, firstDenseSize * 2 * hiddenSize);
+        firstDenseBiases = readFloats(buffer, firstDenseSize);
+        secondDenseWeights = readFloats(buffer, secondDenseSize * firstDenseSize);
+        secondDenseBiases = readFloats(buffer, secondDenseSize);
+        outputWeights = readFloats(buffer, secondDenseSize);
+        outputBias = buffer.getFloat();
+        outputScale = buffer.getFloat();
+
+        accumulators = new short[2][hiddenSize];
+        input = new float[2 * hiddenSize];
+        firstDenseOutput = new float[firstDenseSize];
+        secondDenseOutput = new float[secondDenseSize];
+    }
+
+    /**
+     * Loads a network from a weights file (see the format in the class description)
+     *
+     * @throws IOException if the file cannot be read or is no valid network
+     */
+    public static NnueEvaluator load(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new NnueEvaluator(buffer.order(ByteOrder.LITTLE_ENDIAN));
+        }
+    }
+
+    private static short[] readShorts(ByteBuffer buffer, int count) {
+        short[] values = new short[count];
+        buffer.asShortBuffer().get(values);
+        buffer.position(buffer.position() + count * Short.BYTES);
+        return values;
+    }
+
+    private static float[] readFloats(ByteBuffer buffer, int count) {
+        float[] values = new float[count];
+        buffer.asFloatBuffer().get(values);
+        buffer.position(buffer.position() + count * Float.BYTES);
+        return values;
+    }
+
+    @Override
+    public void attach(Field field) {
+        if (this.field != null) this.field.setBoardChangeListener(null);
+        this.field = field;
+        field.setBoardChangeListener(this);
+    }
+
+    @Override
+    public void boardSet(Field field) {
+        refreshNeeded[0] = true;
+        refreshNeeded[1] = true;
+    }
+
+    @Override
+    public void pieceChanged(int boardIndex, byte oldPiece, byte newPiece) {
+        for (int perspective = 0; perspective < 2; perspective++) {
+            if (refreshNeeded[perspective]) continue;
+            if (isOwnKing(oldPiece, perspective) || isOwnKing(newPiece, perspective)) {
+                refreshNeeded[perspective] = true;
+                continue;
+            }
+            int removed = getFeature(perspective, kingSquares[perspective], oldPiece, boardIndex);
+            int added = getFeature(perspective, kingSquares[perspective], newPiece, boardIndex);
+            if (removed >= 0) subtractFeature(accumulators[perspective], removed);
+            if (added >= 0) addFeature(accumulators[perspective], added);
+        }
+    }
+
+    @Override
+    public int evaluate(Field field) {
+        if (field != this.field) attach(field);
+        for (int perspective = 0; perspective < 2; perspective++)
+            if (refreshNeeded[perspective]) refresh(perspective);
+
+        // the player to move comes first
+        int first = field.isBlackTurn() ? 1 : 0;
+        activate(accumulators[first], 0);
+        activate(accumulators[1 - first], hiddenSize);
+
+        dense(input, firstDenseWeights, firstDenseBiases, firstDenseOutput);
+        clip(firstDenseOutput);
+        dense(firstDenseOutput, secondDenseWeights, secondDenseBiases, secondDenseOutput);
+        clip(secondDenseOutput);
+        float output = outputBias + dot(secondDenseOutput, 0, outputWeights, 0, secondDenseSize);
+
+        int evaluation = Math.round(output * outputScale);
+        return field.isBlackTurn() ? -evaluation : evaluation;
+    }
+
+    /**
+     * Computes the accumulator of the player from all pieces on the board
+     */
+    private void refresh(int perspective) {
+        short[] accumulator = accumulators[perspective];
+        System.arraycopy(featureBiases, 0, accumulator, 0, hiddenSize);
+        byte[] board = field.getBoard();
+        byte ownKing = perspective == 0 ? PieceUtil.WHITE_KING : PieceUtil.BLACK_KING;
+        int kingSquare = 0;
+        for (int i = 0; i < 64; i++)
+            if (board[i] == ownKing) kingSquare = orient(perspective, i);
+        kingSquares[perspective] = kingSquare;
+        for (int i = 0; i < 64; i++) {
+            int feature = getFeature(perspective, kingSquare, board[i], i);
+            if (feature >= 0) addFeature(accumulator, feature);
+        }
+        refreshNeeded[perspective] = false;
+    }
+
+    private static boolean isOwnKing(byte piece, int perspective) {
+        return PieceUtil.isKing(piece) && PieceUtil.isBlack(piece) == (perspective == 1);
+    }
+
+    /**
+     * Black sees the board mirrored vertically, so both players look at it from their own side
+     */
+    private static int orient(int perspective, int boardIndex) {
+        return perspective == 0 ? boardIndex : boardIndex ^ 56;
+    }
+
+    /**
+     * @param kingSquare the oriented square of the king of the perspective
+     * @return the index of the feature, -1 for empty squares and kings, as they are no features
+     */
+    private static int getFeature(int perspective, int kingSquare, byte piece, int boardIndex) {
+        int type = PieceUtil.getTypeIndex(piece);
+        if (type < 0 || type == 5) return -1;
+        boolean own = PieceUtil.isBlack(piece) == (perspective == 1);
+        int pieceFeature = type * 2 + (own ? 0 : 1);
+        return (kingSquare * PIECE_FEATURES + pieceFeature) * 64 + orient(perspective, boardIndex);
+    }
+
+    private void addFeature(short[] accumulator, int feature) {
+        int offset = feature * hiddenSize;
+        int i = 0;
+        for (int bound = SHORT_SPECIES.loopBound(hiddenSize); i < bound; i += SHORT_SPECIES.length()) {
+            ShortVector.fromArray(SHORT_SPECIES, accumulator, i)
+                    .add(ShortVector.fromArray(SHORT_SPECIES, featureWeights, offset + i))
+                    .intoArray(accumulator, i);
+        }
+        for (; i < hiddenSize; i++)
+            accumulator[i] += featureWeights[offset + i];
+    }
+
+    private void subtractFeature(short[] accumulator, int feature) {
+        int offset = feature * hiddenSize;
+        int i = 0;
+        for (int bound = SHORT_SPECIES.loopBound(hiddenSize); i < bound; i += SHORT_SPECIES.length()) {
+            ShortVector.fromArray(SHORT_SPECIES, accumulator, i)
+                    .sub(ShortVector.fromArray(SHORT_SPECIES, featureWeights, offset + i))
+                    .intoArray(accumulator, i);
+        }
+        for (; i < hiddenSize; i++)
+            accumulator[i] -= featureWeights[offset + i];
+    }
+
+    /**
+     * Writes the clipped ReLU of the accumulator, scaled to [0, 1], to the input of the dense layers
+     */
+    private void activate(short[] accumulator, int offset) {
+        for (int i = 0; i < hiddenSize; i++)
+            input[offset + i] = Math.min(Math.max(accumulator[i], 0), ACTIVATION_LIMIT) * (1f / ACTIVATION_LIMIT);
+    }
+
+    /**
+     * Computes output = weights * input + biases, the weights are stored row by row
+     */
+    private static void dense(float[] input, float[] weights, float[] biases, float[] output) {
+        int inputSize = input.length;
+        for (int row = 0; row < output.length; row++)
+            output[row] = biases[row] + dot(input, 0, weights, row * inputSize, inputSize);
+    }
+
+    private static float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        var sum = FloatVector.zero(FLOAT_SPECIES);
+        int i = 0;
+        for (int bound = FLOAT_SPECIES.loopBound(length); i < bound; i += FLOAT_SPECIES.length())
+            sum = FloatVector.fromArray(FLOAT_SPECIES, a, aOffset + i)
+                    .fma(FloatVector.fromArray(FLOAT_SPECIES, b, bOffset + i), sum);
+        float result = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++)
+            result += a[aOffset + i] * b[bOffset + i];
+        return result;
+    }
+
+    /**
+     * Clipped ReLU, limits every value to [0, 1]
+     */
+    private static void clip(float[] values) {
+        for (int i = 0; i < values.length; i++)
+            values[i] = Math.min(Math.max(values[i], 0f), 1f);
+    }
+}
@@ -0,0 +1,94 @@
+package at.htlhl.chess.engine;
+
+import at.htlhl.chess.boardlogic.Field;
+import at.htlhl.chess.boardlogic.Player;
+
+/**
+ * Direct mapped cache of pawn structure evaluations (see {@link PawnStructure}), indexed by the pawn key of the {@link Field}.
+ * The pawns rarely change between neighbouring nodes of the search, so almost every lookup is a hit.
+ * Every {@link Engine} owns its own table, so it does not need to be thread safe.
+ */
+public class PawnHashTable {
+
+    /**
+     * Must be a power of two
+     */
+    private static final int SIZE = 1 << 14;
+
+    private final Entry[] entries = new Entry[SIZE];
+    private long probes = 0;
+    private long hits = 0;
+
+    /**
+     * A cached pawn structure evaluation, positive if white is better
+     */
+    public static class Entry {
+        private long key;
+        int middlegame;
+        int endgame;
+        long whitePassed;
+        long blackPassed;
+
+        public int getMiddlegame() {
+            return middlegame;
+        }
+
+        public int getEndgame() {
+            return endgame;
+        }
+
+        /**
+         * @return the passed pawns of the player as a bitboard, bit n is board index n
+         */
+        public long getPassedPawns(Player player) {
+            return player == Player.WHITE ? whitePassed : blackPassed;
+        }
+    }
+
+    public PawnHashTable() {
+        // an empty entry (key 0, no scores, no passed pawns) is the correct evaluation of a position without pawns
+        for (int i = 0; i < SIZE; i++)
+            entries[i] = new Entry();
+    }
+
+    /**
+     * Gets the pawn structure evaluation of the field, evaluating and storing it if it is not cached yet
+     *
+     * @return the entry, only valid until the next call
+     */
+    public Entry probe(Field field) {
+        long key = field.getPawnKey();
+        Entry entry = entries[(int) key & (SIZE - 1)];
+        probes++;
+        if (entry.key == key) {
+            hits++;
+            return entry;
+        }
+        entry.key = key;
+        PawnStructure.evaluate(field.getPawns(Player.WHITE), field.getPawns(Player.BLACK), entry);
+        return entry;
+    }
+
+    /**
+     * Resets the hit rate, the entries stay valid as they only depend on the pawns
+     */
+    public void resetHitRate() {
+        probes = 0;
+        hits = 0;
+    }
+
+    /**
+     * @return the share of lookups since the last {@link #resetHitRate()} that were answered from the table, between 0 and 1
+     */
+    public double getHitRate() {
+        return probes == 0 ? 0 : (double) hits / probes;
+    }
+
+    public long getProbes() {
+        return probes;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+}
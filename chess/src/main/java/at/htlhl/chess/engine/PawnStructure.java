@@ -0,0 +1,174 @@
+package at.htlhl.chess.engine;
+
+/**
+ * Evaluates the pawn structure (doubled, isolated, backward and passed pawns) set-wise on pawn bitboards.
+ * Bit n of a bitboard is board index n, so the 8th rank are the lowest bits and white pawns move towards lower bits.
+ * The results only depend on the pawns, which is why they are cached in the {@link PawnHashTable}.
+ */
+public final class PawnStructure {
+
+    private PawnStructure() {
+    }
+
+    private static final long FILE_A = 0x0101010101010101L;
+    private static final long FILE_H = 0x8080808080808080L;
+
+    private static final int DOUBLED_MIDDLEGAME = -10;
+    private static final int DOUBLED_ENDGAME = -20;
+    private static final int ISOLATED_MIDDLEGAME = -10;
+    private static final int ISOLATED_ENDGAME = -15;
+    private static final int BACKWARD_MIDDLEGAME = -8;
+    private static final int BACKWARD_ENDGAME = -10;
+
+    /**
+     * Bonus for passed pawns, indexed by the rank relative to the owner (0 is the owners first rank)
+     */
+    private static final int[] PASSED_MIDDLEGAME = {0, 5, 10, 15, 25, 40, 60, 0};
+    private static final int[] PASSED_ENDGAME = {0, 5, 10, 20, 35, 60, 90, 0};
+
+    /**
+     * Additional endgame bonus for passed pawns whose next square is empty, indexed like {@link #PASSED_ENDGAME}
+     */
+    private static final int[] FREE_PASSED_ENDGAME = {0, 0, 2, 5, 10, 20, 30, 0};
+
+    /**
+     * Evaluates the pawn structure and stores the scores and passed pawns in the entry
+     *
+     * @param entry the entry to fill, its key is not changed
+     */
+    static void evaluate(long whitePawns, long blackPawns, PawnHashTable.Entry entry) {
+        long whiteFrontSpans = north(northFill(whitePawns));
+        long blackFrontSpans = south(southFill(blackPawns));
+        long whiteAttacks = whitePawnAttacks(whitePawns);
+        long blackAttacks = blackPawnAttacks(blackPawns);
+
+        // pawns with an own pawn in front of them
+        long whiteRear = whitePawns & south(southFill(whitePawns));
+        long blackRear = blackPawns & north(northFill(blackPawns));
+
+        // a pawn is passed if no enemy pawn can block or capture it on its way, of doubled pawns only the front one counts
+        long whitePassed = whitePawns & ~whiteRear & ~(blackFrontSpans | east(blackFrontSpans) | west(blackFrontSpans));
+        long blackPassed = blackPawns & ~blackRear & ~(whiteFrontSpans | east(whiteFrontSpans) | west(whiteFrontSpans));
+
+        int middlegame = 0;
+        int endgame = 0;
+
+        int doubled = Long.bitCount(whiteRear) - Long.bitCount(blackRear);
+        middlegame += doubled * DOUBLED_MIDDLEGAME;
+        endgame += doubled * DOUBLED_ENDGAME;
+
+        int isolated = Long.bitCount(isolated(whitePawns)) - Long.bitCount(isolated(blackPawns));
+        middlegame += isolated * ISOLATED_MIDDLEGAME;
+        endgame += isolated * ISOLATED_ENDGAME;
+
+        // backward: the stop square is attacked by an enemy pawn and no own pawn can ever defend it
+        long whiteAttackSpans = northFill(whiteAttacks);
+        long blackAttackSpans = southFill(blackAttacks);
+        long whiteBackward = south(north(whitePawns) & blackAttacks & ~whiteAttackSpans);
+        long blackBackward = north(south(blackPawns) & whiteAttacks & ~blackAttackSpans);
+        int backward = Long.bitCount(whiteBackward) - Long.bitCount(blackBackward);
+        middlegame += backward * BACKWARD_MIDDLEGAME;
+        endgame += backward * BACKWARD_ENDGAME;
+
+        for (long passed = whitePassed; passed != 0; passed &= passed - 1) {
+            int rank = 7 - (Long.numberOfTrailingZeros(passed) >>> 3);
+            middlegame += PASSED_MIDDLEGAME[rank];
+            endgame += PASSED_ENDGAME[rank];
+        }
+        for (long passed = blackPassed; passed != 0; passed &= passed - 1) {
+            int rank = Long.numberOfTrailingZeros(passed) >>> 3;
+            middlegame -= PASSED_MIDDLEGAME[rank];
+            endgame -= PASSED_ENDGAME[rank];
+        }
+
+        entry.middlegame = middlegame;
+        entry.endgame = endgame;
+        entry.whitePassed = whitePassed;
+        entry.blackPassed = blackPassed;
+    }
+
+    /**
+     * Evaluates the part of the passed pawns that depends on other pieces, so it cannot be cached in the {@link PawnHashTable}
+     *
+     * @return the endgame bonus of passed pawns that can advance, positive if white is better
+     */
+    static int evaluateFreePassedPawns(PawnHashTable.Entry entry, byte[] board) {
+        int endgame = 0;
+        for (long passed = entry.whitePassed; passed != 0; passed &= passed - 1) {
+            int index = Long.numberOfTrailingZeros(passed);
+            if (board[index - 8] == 0) endgame += FREE_PASSED_ENDGAME[7 - (index >>> 3)];
+        }
+        for (long passed = entry.blackPassed; passed != 0; passed &= passed - 1) {
+            int index = Long.numberOfTrailingZeros(passed);
+            if (board[index + 8] == 0) endgame -= FREE_PASSED_ENDGAME[index >>> 3];
+        }
+        return endgame;
+    }
+
+    /**
+     * @return the squares attacked by the white pawns
+     */
+    static long whitePawnAttacks(long whitePawns) {
+        return east(north(whitePawns)) | west(north(whitePawns));
+    }
+
+    /**
+     * @return the squares attacked by the black pawns
+     */
+    static long blackPawnAttacks(long blackPawns) {
+        return east(south(blackPawns)) | west(south(blackPawns));
+    }
+
+    private static long isolated(long pawns) {
+        long files = northFill(pawns) | southFill(pawns);
+        return pawns & ~(east(files) | west(files));
+    }
+
+    /**
+     * Shifts towards the 8th rank
+     */
+    private static long north(long bitboard) {
+        return bitboard >>> 8;
+    }
+
+    /**
+     * Shifts towards the 1st rank
+     */
+    private static long south(long bitboard) {
+        return bitboard << 8;
+    }
+
+    /**
+     * Shifts towards the h file
+     */
+    private static long east(long bitboard) {
+        return (bitboard << 1) & ~FILE_A;
+    }
+
+    /**
+     * Shifts towards the a file
+     */
+    private static long west(long bitboard) {
+        return (bitboard >>> 1) & ~FILE_H;
+    }
+
+    /**
+     * @return the bitboard with every set bit smeared towards the 8th rank
+     */
+    private static long northFill(long bitboard) {
+        bitboard |= bitboard >>> 8;
+        bitboard |= bitboard >>> 16;
+        bitboard |= bitboard >>> 32;
+        return bitboard;
+    }
+
+    /**
+     * @return the bitboard with every set bit smeared towards the 1st rank
+     */
+    private static long southFill(long bitboard) {
+        bitboard |= bitboard << 8;
+        bitboard |= bitboard << 16;
+        bitboard |= bitboard << 32;
+        return bitboard;
+    }
+}
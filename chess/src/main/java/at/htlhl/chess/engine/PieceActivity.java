@@ -0,0 +1,105 @@
+package at.htlhl.chess.engine;
+
+import at.htlhl.chess.boardlogic.Field;
+import at.htlhl.chess.boardlogic.Player;
+import at.htlhl.chess.boardlogic.util.PieceUtil;
+
+/**
+ * Evaluates mobility, space and attacks on the king zone from the attack counts that the {@link Field} keeps up to date
+ * with every move (see {@link Field#getWhiteAttackSquares()}), so no moves have to be generated.
+ * The counts are per square and include the attacks of pawns and kings, also on squares occupied by own pieces.
+ * They have to be the same as the ones of a field set up from the FEN, as the evaluations are cached by position.
+ */
+public final class PieceActivity {
+
+    private PieceActivity() {
+    }
+
+    /**
+     * Bonus per attacked square that is neither occupied by an own piece nor attacked by an enemy pawn
+     */
+    private static final int MOBILITY_MIDDLEGAME = 2;
+    private static final int MOBILITY_ENDGAME = 3;
+
+    /**
+     * Bonus per square of the own central space that is attacked and not contested by enemy pawns
+     */
+    private static final int SPACE_MIDDLEGAME = 3;
+
+    /**
+     * Penalty by the number of enemy attacks on the king zone. There is none in the endgame, where the king should be active.
+     */
+    private static final int[] KING_ZONE_ATTACKS_MIDDLEGAME = {0, 0, 3, 8, 15, 24, 35, 48, 63, 80, 100, 120};
+
+    /**
+     * Files c to f of the 2nd to 4th rank, by board index
+     */
+    private static final long WHITE_SPACE = 0x003C3C3C00000000L;
+
+    /**
+     * Files c to f of the 7th to 5th rank, by board index
+     */
+    private static final long BLACK_SPACE = 0x000000003C3C3C00L;
+
+    /**
+     * @return the tapered score of mobility, space and king safety, positive if white is better
+     */
+    static int evaluate(Field field) {
+        byte[] board = field.getBoard();
+        byte[] whiteAttacks = field.getWhiteAttackSquares();
+        byte[] blackAttacks = field.getBlackAttackSquares();
+        long whitePawns = field.getPawns(Player.WHITE);
+        long blackPawns = field.getPawns(Player.BLACK);
+        long whitePawnAttacks = PawnStructure.whitePawnAttacks(whitePawns);
+        long blackPawnAttacks = PawnStructure.blackPawnAttacks(blackPawns);
+
+        int mobility = 0;
+        int space = 0;
+        int whiteKing = -1, blackKing = -1;
+        for (int square = 0; square < 64; square++) {
+            byte piece = board[square];
+            long bit = 1L << square;
+            boolean empty = PieceUtil.isEmpty(piece);
+            if (!empty && PieceUtil.isKing(piece)) {
+                if (PieceUtil.isWhite(piece)) whiteKing = square;
+                else blackKing = square;
+            }
+
+            if (whiteAttacks[square] > 0 && (blackPawnAttacks & bit) == 0) {
+                if (empty || PieceUtil.isBlack(piece)) mobility++;
+                if ((WHITE_SPACE & ~whitePawns & bit) != 0) space++;
+            }
+            if (blackAttacks[square] > 0 && (whitePawnAttacks & bit) == 0) {
+                if (empty || PieceUtil.isWhite(piece)) mobility--;
+                if ((BLACK_SPACE & ~blackPawns & bit) != 0) space--;
+            }
+        }
+
+        int kingSafety = 0;
+        if (whiteKing >= 0) kingSafety -= KING_ZONE_ATTACKS_MIDDLEGAME[countKingZoneAttacks(whiteKing, -1, blackAttacks)];
+        if (blackKing >= 0) kingSafety += KING_ZONE_ATTACKS_MIDDLEGAME[countKingZoneAttacks(blackKing, 1, whiteAttacks)];
+
+        int middlegame = mobility * MOBILITY_MIDDLEGAME + space * SPACE_MIDDLEGAME + kingSafety;
+        int endgame = mobility * MOBILITY_ENDGAME;
+        return PositionTables.taper(middlegame, endgame, field.getPhase());
+    }
+
+    /**
+     * Sums the enemy attacks on the squares around the king and the three squares two ranks in front of it
+     *
+     * @param forward the direction of the own pawns on the board, -1 for white
+     * @return the sum, capped to the last index of {@link #KING_ZONE_ATTACKS_MIDDLEGAME}
+     */
+    private static int countKingZoneAttacks(int king, int forward, byte[] enemyAttacks) {
+        int kingX = king & 7;
+        int kingY = king >>> 3;
+        int attacks = 0;
+        for (int row = -1; row <= 2; row++) {
+            int y = kingY + (row == 2 ? 2 * forward : row);
+            if (y < 0 || y > 7) continue;
+            for (int x = Math.max(kingX - 1, 0); x <= Math.min(kingX + 1, 7); x++)
+                attacks += enemyAttacks[y * 8 + x];
+        }
+        return Math.min(attacks, KING_ZONE_ATTACKS_MIDDLEGAME.length - 1);
+    }
+}
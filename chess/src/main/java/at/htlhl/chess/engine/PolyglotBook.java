@@ -0,0 +1,231 @@
+package at.htlhl.chess.engine;
+
+import at.htlhl.chess.boardlogic.Field;
+import at.htlhl.chess.boardlogic.Move;
+import at.htlhl.chess.boardlogic.util.CastlingUtil;
+import at.htlhl.chess.boardlogic.util.PieceUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Opening book in the Polyglot .bin format. The file is memory mapped, so looking up a position reads only the few pages
+ * the binary search touches and allocates nothing but the result, independent of the size of the book.
+ * <p>
+ * A book file is a sequence of 16 byte big endian entries sorted by key: key (8 bytes), move (2), weight (2), learn (4).
+ * The key is the Polyglot hash of the position, which uses the 781 fixed "Random64" numbers of the Polyglot standard.
+ * They are not part of this repository and are read from a file of 781 big endian longs, in the order of the standard:
+ * 768 piece keys, 4 castling keys, 8 en passant keys and the white to move key.
+ * <p>
+ * Lookups only read the mapped buffer, so one book can be used by several engines on different threads.
+ */
+public class PolyglotBook {
+
+    /**
+     * The Polyglot key of the start position, used to check that the Random64 numbers are the right ones
+     */
+    public static final long START_POSITION_KEY = 0x463b96181691fc9cL;
+
+    private static final int ENTRY_SIZE = 16;
+    private static final int RANDOM_COUNT = 781;
+    private static final int CASTLING_OFFSET = 768;
+    private static final int EN_PASSANT_OFFSET = 772;
+    private static final int TURN_OFFSET = 780;
+    private static final String START_POSITION_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    /**
+     * The promotion pieces in the order of the move encoding, starting at 1
+     */
+    private static final byte[] PROMOTION_PIECES = {PieceUtil.KNIGHT_MASK, PieceUtil.BISHOP_MASK, PieceUtil.ROOK_MASK, PieceUtil.QUEEN_MASK};
+
+    /**
+     * A move of the book with its weight, the move is legal in the position it was looked up for
+     */
+    public record BookMove(Move move, int weight) {
+    }
+
+    private final MappedByteBuffer entries;
+    private final int entryCount;
+    private final long[] random64;
+
+    private PolyglotBook(MappedByteBuffer entries, long[] random64) {
+        this.entries = entries;
+        this.entryCount = entries.capacity() / ENTRY_SIZE;
+        this.random64 = random64;
+    }
+
+    /**
+     * Maps the book file and reads the Random64 numbers
+     *
+     * @param bookFile     the Polyglot .bin file, at most 2 GB
+     * @param random64File the 781 Random64 numbers of the Polyglot standard as big endian longs
+     * @throws IOException if a file cannot be read, has the wrong size or the numbers do not give the key of the start position
+     */
+    public static PolyglotBook open(Path bookFile, Path random64File) throws IOException {
+        long[] random64 = readRandom64(random64File);
+        MappedByteBuffer entries;
+        try (var channel = FileChannel.open(bookFile, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size % ENTRY_SIZE != 0 || size > Integer.MAX_VALUE - ENTRY_SIZE + 1)
+                throw new IOException("Invalid Polyglot book size: " + size + " bytes");
+            // the mapping stays valid after the channel is closed
+            entries = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        entries.order(ByteOrder.BIG_ENDIAN);
+        return new PolyglotBook(entries, random64);
+    }
+
+    static long[] readRandom64(Path random64File) throws IOException {
+        byte[] bytes = Files.readAllBytes(random64File);
+        if (bytes.length != RANDOM_COUNT * Long.BYTES)
+            throw new IOException("Expected " + RANDOM_COUNT + " Random64 numbers, the file has " + bytes.length + " bytes");
+        long[] random64 = new long[RANDOM_COUNT];
+        ByteBuffer.wrap(bytes).order(ByteOrder.BIG_ENDIAN).asLongBuffer().get(random64);
+
+        var startPosition = new Field();
+        startPosition.trySetFEN(START_POSITION_FEN);
+        long key = computeKey(startPosition, random64);
+        if (key != START_POSITION_KEY)
+            throw new IOException("The Random64 numbers are not the ones of the Polyglot standard, the start position key is "
+                    + Long.toHexString(key));
+        return random64;
+    }
+
+    /**
+     * @return the Polyglot key of the position
+     */
+    public long getKey(Field field) {
+        return computeKey(field, random64);
+    }
+
+    static long computeKey(Field field, long[] random64) {
+        long key = 0;
+        byte[] board = field.getBoard();
+        for (int index = 0; index < 64; index++) {
+            byte piece = board[index];
+            if (PieceUtil.isEmpty(piece)) continue;
+            // Polyglot counts the ranks from 1 and orders the pieces black pawn, white pawn, black knight, ...
+            int kind = PieceUtil.getTypeIndex(piece) * 2 + (PieceUtil.isWhite(piece) ? 1 : 0);
+            int row = 7 - index / 8;
+            int file = index % 8;
+            key ^= random64[64 * kind + 8 * row + file];
+        }
+
+        byte castling = field.getCastlingInformation();
+        if (CastlingUtil.hasFlag(castling, CastlingUtil.WHITE_KING_SIDE)) key ^= random64[CASTLING_OFFSET];
+        if (CastlingUtil.hasFlag(castling, CastlingUtil.WHITE_QUEEN_SIDE)) key ^= random64[CASTLING_OFFSET + 1];
+        if (CastlingUtil.hasFlag(castling, CastlingUtil.BLACK_KING_SIDE)) key ^= random64[CASTLING_OFFSET + 2];
+        if (CastlingUtil.hasFlag(castling, CastlingUtil.BLACK_QUEEN_SIDE)) key ^= random64[CASTLING_OFFSET + 3];
+
+        // the en passant file only counts if a pawn of the player to move can actually capture there
+        var enPassantSquare = field.getPossibleEnPassantSquare();
+        if (enPassantSquare != null) {
+            byte ownPawn = field.isBlackTurn() ? PieceUtil.BLACK_PAWN : PieceUtil.WHITE_PAWN;
+            int pawnY = enPassantSquare.y() + (field.isBlackTurn() ? -1 : 1);
+            int x = enPassantSquare.x();
+            if ((x > 0 && board[pawnY * 8 + x - 1] == ownPawn) || (x < 7 && board[pawnY * 8 + x + 1] == ownPawn))
+                key ^= random64[EN_PASSANT_OFFSET + x];
+        }
+
+        if (field.isBlackTurn() == false)
+            key ^= random64[TURN_OFFSET];
+        return key;
+    }
+
+    /**
+     * @return the legal moves the book has for the position, sorted by weight from high to low, empty if the position is not in the book
+     */
+    public List<BookMove> getMoves(Field field) {
+        long key = getKey(field);
+        var result = new ArrayList<BookMove>();
+        for (int i = findFirst(key); i < entryCount && entries.getLong(i * ENTRY_SIZE) == key; i++) {
+            int weight = Short.toUnsignedInt(entries.getShort(i * ENTRY_SIZE + 10));
+            Move move = toLegalMove(field, Short.toUnsignedInt(entries.getShort(i * ENTRY_SIZE + 8)));
+            if (move != null)
+                result.add(new BookMove(move, weight));
+        }
+        result.sort((m1, m2) -> Integer.compare(m2.weight(), m1.weight()));
+        return result;
+    }
+
+    /**
+     * @return the move with the highest weight, or null if the position is not in the book
+     */
+    public Move getBestMove(Field field) {
+        var moves = getMoves(field);
+        return moves.isEmpty() ? null : moves.getFirst().move();
+    }
+
+    /**
+     * @return a move chosen randomly with the probabilities given by the weights, or null if the position is not in the book
+     */
+    public Move getWeightedRandomMove(Field field) {
+        var moves = getMoves(field);
+        long totalWeight = moves.stream().mapToLong(BookMove::weight).sum();
+        if (totalWeight == 0)
+            return moves.isEmpty() ? null : moves.getFirst().move();
+        long choice = ThreadLocalRandom.current().nextLong(totalWeight);
+        for (var move : moves) {
+            choice -= move.weight();
+            if (choice < 0) return move.move();
+        }
+        return moves.getLast().move();
+    }
+
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * @return the index of the first entry with a key not below the key, comparing unsigned like the sort order of the book
+     */
+    private int findFirst(long key) {
+        int low = 0;
+        int high = entryCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (Long.compareUnsigned(entries.getLong(middle * ENTRY_SIZE), key) < 0)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * Decodes a Polyglot move (to file, to row, from file, from row and promotion in 3 bits each) and finds the legal move it stands for.
+     * Castling is encoded as the king capturing its own rook.
+     */
+    private static Move toLegalMove(Field field, int encoded) {
+        int toFile = encoded & 7;
+        int toRow = encoded >> 3 & 7;
+        int fromFile = encoded >> 6 & 7;
+        int fromRow = encoded >> 9 & 7;
+        int promotion = encoded >> 12 & 7;
+
+        int from = (7 - fromRow) * 8 + fromFile;
+        byte piece = field.getBoard()[from];
+        if (PieceUtil.isKing(piece) && fromFile == 4 && (toFile == 0 || toFile == 7) && fromRow == toRow)
+            toFile = toFile == 7 ? 6 : 2;
+        int to = (7 - toRow) * 8 + toFile;
+
+        for (Move move : field.getLegalMoves()) {
+            if (move.getStartingSquare().getBoardIndex() != from || move.getTargetSquare().getBoardIndex() != to)
+                continue;
+            byte promotionPiece = move.getPromotionPiece();
+            if (promotion == 0 ? PieceUtil.isEmpty(promotionPiece)
+                    : (promotionPiece & PROMOTION_PIECES[promotion - 1]) != 0)
+                return move;
+        }
+        return null;
+    }
+}
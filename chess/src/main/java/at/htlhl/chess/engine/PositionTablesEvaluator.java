@@ -0,0 +1,64 @@
+package at.htlhl.chess.engine;
+
+import at.htlhl.chess.boardlogic.Field;
+
+/**
+ * The handcrafted evaluation: material, piece square values (see {@link PositionTables}), the pawn structure (see {@link PawnStructure})
+ * and mobility, space and king safety (see {@link PieceActivity}).
+ * The middlegame and endgame scores are blended by the game phase.
+ * <p>
+ * The terms are added in tiers from cheap to expensive. Material and piece square values are kept up to date by the {@link Field},
+ * the later tiers have to be computed. A lazy evaluation stops before a tier if the score is further outside the window
+ * than the margin of that tier and all later ones, which is more than they add up to in all but extreme positions.
+ */
+public class PositionTablesEvaluator implements Evaluator {
+
+    /**
+     * The most the pawn structure tier changes the evaluation: doubled, isolated, backward and passed pawns of both sides
+     */
+    static final int PAWN_STRUCTURE_MARGIN = 350;
+
+    /**
+     * The most the piece activity tier changes the evaluation
+     */
+    static final int PIECE_ACTIVITY_MARGIN = 200;
+
+    private final PawnHashTable pawnHashTable = new PawnHashTable();
+    private boolean lastEvaluationLazy = false;
+
+    @Override
+    public int evaluate(Field field) {
+        return evaluate(field, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int evaluate(Field field, int alpha, int beta) {
+        lastEvaluationLazy = true;
+        int material = field.getPieceEvaluation();
+        int middlegame = field.getMiddlegamePositionalEvaluation();
+        int endgame = field.getEndgamePositionalEvaluation();
+        int score = material + PositionTables.taper(middlegame, endgame, field.getPhase());
+        int margin = PAWN_STRUCTURE_MARGIN + PIECE_ACTIVITY_MARGIN;
+        if ((long) score + margin <= alpha) return score + margin;
+        if ((long) score - margin >= beta) return score - margin;
+
+        PawnHashTable.Entry pawns = pawnHashTable.probe(field);
+        middlegame += pawns.getMiddlegame();
+        endgame += pawns.getEndgame() + PawnStructure.evaluateFreePassedPawns(pawns, field.getBoard());
+        score = material + PositionTables.taper(middlegame, endgame, field.getPhase());
+        if ((long) score + PIECE_ACTIVITY_MARGIN <= alpha) return score + PIECE_ACTIVITY_MARGIN;
+        if ((long) score - PIECE_ACTIVITY_MARGIN >= beta) return score - PIECE_ACTIVITY_MARGIN;
+
+        lastEvaluationLazy = false;
+        return score + PieceActivity.evaluate(field);
+    }
+
+    @Override
+    public boolean isLastEvaluationLazy() {
+        return lastEvaluationLazy;
+    }
+
+    public PawnHashTable getPawnHashTable() {
+        return pawnHashTable;
+    }
+}
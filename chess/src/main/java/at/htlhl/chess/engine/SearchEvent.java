@@ -0,0 +1,38 @@
+package at.htlhl.chess.engine;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event covering one whole search of the {@link Engine}, from the start of the first iteration until the result is returned
+ */
+@Name("at.htlhl.chess.Search")
+@Label("Search")
+@Category({"Chess", "Engine"})
+@Description("One search of the engine with iterative deepening")
+class SearchEvent extends jdk.jfr.Event {
+
+    @Label("FEN")
+    String fen;
+
+    @Label("Completed Depth")
+    int depth;
+
+    @Label("Nodes")
+    long nodes;
+
+    @Label("Nodes per Second")
+    long nodesPerSecond;
+
+    @Label("Best Move")
+    String bestMove;
+
+    @Label("Evaluation")
+    int evaluation;
+
+    @Label("Stopped")
+    @Description("true if the last iteration was aborted by the stop flag or the hard time limit")
+    boolean stopped;
+}
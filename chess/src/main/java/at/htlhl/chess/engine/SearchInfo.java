@@ -0,0 +1,38 @@
+package at.htlhl.chess.engine;
+
+import at.htlhl.chess.boardlogic.Move;
+
+import java.util.List;
+
+/**
+ * The state of a running search, passed to a {@link SearchListener}
+ *
+ * @param depth               the depth of the last completed iteration
+ * @param selectiveDepth      the highest ply reached by the last completed iteration
+ * @param moves               the root moves of the last completed iteration sorted from best to worst, see {@link Engine#getBestMoves(TimeManager)}
+ * @param principalVariations the lines of the best moves, one for every multi PV line
+ * @param nodes               the nodes visited by the search so far
+ * @param timeNS              the time the search runs so far
+ */
+public record SearchInfo(int depth, int selectiveDepth, List<EvaluatedMove> moves, List<List<Move>> principalVariations,
+                         long nodes, long timeNS) {
+
+    public EvaluatedMove getBestMove() {
+        return moves.getFirst();
+    }
+
+    /**
+     * @return the evaluation of the best move, positive if white is better
+     */
+    public int getEvaluation() {
+        return moves.getFirst().evaluation();
+    }
+
+    public List<Move> getPrincipalVariation() {
+        return principalVariations.isEmpty() ? List.of() : principalVariations.getFirst();
+    }
+
+    public long getNodesPerSecond() {
+        return timeNS == 0 ? 0 : nodes * 1_000_000_000L / timeNS;
+    }
+}
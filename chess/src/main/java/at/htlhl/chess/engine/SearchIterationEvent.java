@@ -0,0 +1,58 @@
+package at.htlhl.chess.engine;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Percentage;
+
+/**
+ * Flight recorder event covering one completed iteration of the {@link Engine}, with the values of {@link SearchStats.Iteration}
+ */
+@Name("at.htlhl.chess.SearchIteration")
+@Label("Search Iteration")
+@Category({"Chess", "Engine"})
+@Description("One completed iteration of iterative deepening")
+class SearchIterationEvent extends jdk.jfr.Event {
+
+    @Label("Depth")
+    int depth;
+
+    @Label("Selective Depth")
+    int selectiveDepth;
+
+    @Label("Nodes")
+    long nodes;
+
+    @Label("Quiescence Nodes")
+    long quiescenceNodes;
+
+    @Label("Nodes per Second")
+    long nodesPerSecond;
+
+    @Label("Branching Factor")
+    @Description("Nodes of this iteration divided by the nodes of the previous one")
+    double branchingFactor;
+
+    @Label("First Move Cutoff Rate")
+    @Percentage
+    double firstMoveCutoffRate;
+
+    @Label("Evaluation Cache Hit Rate")
+    @Percentage
+    double evaluationHitRate;
+
+    @Label("Lazy Evaluation Rate")
+    @Percentage
+    double lazyEvaluationRate;
+
+    @Label("Pawn Hash Hit Rate")
+    @Percentage
+    double pawnHashHitRate;
+
+    @Label("Best Move")
+    String bestMove;
+
+    @Label("Evaluation")
+    int evaluation;
+}
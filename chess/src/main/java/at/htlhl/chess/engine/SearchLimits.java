@@ -0,0 +1,139 @@
+package at.htlhl.chess.engine;
+
+/**
+ * The limits of one search of the {@link Engine}, the search stops at whichever limit is reached first.
+ * A limit of 0 means there is none. Instances are immutable, the with methods return changed copies.
+ */
+public class SearchLimits {
+
+    private static final SearchLimits INFINITE = new SearchLimits(0, 0, 0, 0, 0, 0, 0);
+
+    private final int depth;
+    private final long nodes;
+    private final long moveTimeNS;
+    private final long remainingNS;
+    private final long incrementNS;
+    private final int movesToGo;
+    private final int mate;
+
+    private SearchLimits(int depth, long nodes, long moveTimeNS, long remainingNS, long incrementNS, int movesToGo, int mate) {
+        this.depth = depth;
+        this.nodes = nodes;
+        this.moveTimeNS = moveTimeNS;
+        this.remainingNS = remainingNS;
+        this.incrementNS = incrementNS;
+        this.movesToGo = movesToGo;
+        this.mate = mate;
+    }
+
+    /**
+     * Searches until {@link Engine#stop()} is called (or the engine reaches its maximum depth)
+     */
+    public static SearchLimits infinite() {
+        return INFINITE;
+    }
+
+    public static SearchLimits depth(int depth) {
+        return INFINITE.withDepth(depth);
+    }
+
+    public static SearchLimits nodes(long nodes) {
+        return INFINITE.withNodes(nodes);
+    }
+
+    public static SearchLimits moveTime(long moveTimeNS) {
+        return INFINITE.withMoveTime(moveTimeNS);
+    }
+
+    /**
+     * @see TimeManager#forClock(long, long, int)
+     */
+    public static SearchLimits clock(long remainingNS, long incrementNS, int movesToGo) {
+        return INFINITE.withClock(remainingNS, incrementNS, movesToGo);
+    }
+
+    public static SearchLimits mate(int moves) {
+        return INFINITE.withMate(moves);
+    }
+
+    /**
+     * @param depth the depth of the last iteration
+     */
+    public SearchLimits withDepth(int depth) {
+        return new SearchLimits(depth, nodes, moveTimeNS, remainingNS, incrementNS, movesToGo, mate);
+    }
+
+    /**
+     * @param nodes the number of nodes after which the search stops, the result is the last iteration completed before.
+     *              The same node limit always gives the same result, unlike a time limit.
+     */
+    public SearchLimits withNodes(long nodes) {
+        return new SearchLimits(depth, nodes, moveTimeNS, remainingNS, incrementNS, movesToGo, mate);
+    }
+
+    /**
+     * @param moveTimeNS the exact time to think, overrides the clock
+     */
+    public SearchLimits withMoveTime(long moveTimeNS) {
+        return new SearchLimits(depth, nodes, moveTimeNS, remainingNS, incrementNS, movesToGo, mate);
+    }
+
+    /**
+     * @see TimeManager#forClock(long, long, int)
+     */
+    public SearchLimits withClock(long remainingNS, long incrementNS, int movesToGo) {
+        return new SearchLimits(depth, nodes, moveTimeNS, remainingNS, incrementNS, movesToGo, mate);
+    }
+
+    /**
+     * @param moves stop as soon as a mate in at most this many moves is found for the player to move
+     */
+    public SearchLimits withMate(int moves) {
+        return new SearchLimits(depth, nodes, moveTimeNS, remainingNS, incrementNS, movesToGo, moves);
+    }
+
+    /**
+     * @return the time manager for the time limits, one without limits if there are none
+     */
+    public TimeManager createTimeManager() {
+        if (moveTimeNS > 0)
+            return TimeManager.forMoveTime(moveTimeNS);
+        if (remainingNS > 0)
+            return TimeManager.forClock(remainingNS, incrementNS, movesToGo);
+        return TimeManager.forInfinite();
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    public long getMoveTime() {
+        return moveTimeNS;
+    }
+
+    public long getRemainingTime() {
+        return remainingNS;
+    }
+
+    public long getIncrement() {
+        return incrementNS;
+    }
+
+    public int getMovesToGo() {
+        return movesToGo;
+    }
+
+    public int getMate() {
+        return mate;
+    }
+
+    @Override
+    public String toString() {
+        return "SearchLimits{depth=" + depth + ", nodes=" + nodes + ", moveTime=" + moveTimeNS + ", remaining=" + remainingNS +
+                ", increment=" + incrementNS + ", movesToGo=" + movesToGo + ", mate=" + mate + "}";
+    }
+}
@@ -0,0 +1,20 @@
+package at.htlhl.chess.engine;
+
+/**
+ * Gets the results of a running search of the {@link Engine}, so they can be shown before the search finished.
+ * The methods are called on the thread of the search and must return quickly, they may call {@link Engine#stop()} to end the search early.
+ */
+public interface SearchListener {
+
+    /**
+     * Called after every completed iteration
+     */
+    void iterationCompleted(SearchInfo info);
+
+    /**
+     * Called at most every {@link Engine#REPORT_INTERVAL} while an iteration is running, with the results of the last completed iteration
+     * and the current node count and time
+     */
+    default void searchProgress(SearchInfo info) {
+    }
+}
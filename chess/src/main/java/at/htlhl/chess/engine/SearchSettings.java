@@ -0,0 +1,109 @@
+package at.htlhl.chess.engine;
+
+/**
+ * Switches and margins of the selective search techniques used by the {@link Engine}.
+ * Every technique can be turned off on its own, so its effect on the search can be measured.
+ */
+public class SearchSettings {
+
+    private boolean nullMovePruning = true;
+    private boolean lateMoveReductions = true;
+    private boolean lateMovePruning = true;
+    private boolean futilityPruning = true;
+    private boolean reverseFutilityPruning = true;
+    private boolean razoring = true;
+
+    /**
+     * Margins for futility pruning of quiet moves, indexed by the remaining depth
+     */
+    private int[] futilityMargins = {0, 200, 320, 500};
+
+    /**
+     * Margins for reverse futility (static null move) pruning, indexed by the remaining depth
+     */
+    private int[] reverseFutilityMargins = {0, 120, 240, 360, 480, 600, 720};
+
+    /**
+     * Margins for razoring, indexed by the remaining depth
+     */
+    private int[] razoringMargins = {0, 300, 550, 800};
+
+    /**
+     * @return the margin for the depth, or -1 if the technique does not apply at this depth
+     */
+    static int getMargin(int[] margins, int depth) {
+        return depth > 0 && depth < margins.length ? margins[depth] : -1;
+    }
+
+    public boolean isNullMovePruning() {
+        return nullMovePruning;
+    }
+
+    public void setNullMovePruning(boolean nullMovePruning) {
+        this.nullMovePruning = nullMovePruning;
+    }
+
+    public boolean isLateMoveReductions() {
+        return lateMoveReductions;
+    }
+
+    public void setLateMoveReductions(boolean lateMoveReductions) {
+        this.lateMoveReductions = lateMoveReductions;
+    }
+
+    public boolean isLateMovePruning() {
+        return lateMovePruning;
+    }
+
+    public void setLateMovePruning(boolean lateMovePruning) {
+        this.lateMovePruning = lateMovePruning;
+    }
+
+    public boolean isFutilityPruning() {
+        return futilityPruning;
+    }
+
+    public void setFutilityPruning(boolean futilityPruning) {
+        this.futilityPruning = futilityPruning;
+    }
+
+    public boolean isReverseFutilityPruning() {
+        return reverseFutilityPruning;
+    }
+
+    public void setReverseFutilityPruning(boolean reverseFutilityPruning) {
+        this.reverseFutilityPruning = reverseFutilityPruning;
+    }
+
+    public boolean isRazoring() {
+        return razoring;
+    }
+
+    public void setRazoring(boolean razoring) {
+        this.razoring = razoring;
+    }
+
+    public int[] getFutilityMargins() {
+        return futilityMargins;
+    }
+
+    public void setFutilityMargins(int[] futilityMargins) {
+        this.futilityMargins = futilityMargins;
+    }
+
+    public int[] getReverseFutilityMargins() {
+        return reverseFutilityMargins;
+    }
+
+    public void setReverseFutilityMargins(int[] reverseFutilityMargins) {
+        this.reverseFutilityMargins = reverseFutilityMargins;
+    }
+
+    public int[] getRazoringMargins() {
+        return razoringMargins;
+    }
+
+    public void setRazoringMargins(int[] razoringMargins) {
+        this.razoringMargins = razoringMargins;
+    }
+}
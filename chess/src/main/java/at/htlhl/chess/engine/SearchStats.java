@@ -0,0 +1,140 @@
+package at.htlhl.chess.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Statistics about one search of the {@link Engine}, with one entry for every completed iteration.
+ * The counters of an iteration only cover that iteration, not the ones before it.
+ */
+public class SearchStats {
+
+    /**
+     * The statistics of one completed iteration
+     *
+     * @param depth              the depth of the iteration
+     * @param nodes              the nodes visited, including the quiescence nodes
+     * @param quiescenceNodes    the nodes visited by the quiescence search
+     * @param selectiveDepth     the highest ply reached, including the quiescence search
+     * @param timeNS             the time the iteration took
+     * @param cutoffs            the beta cutoffs in the main search
+     * @param firstMoveCutoffs   the cutoffs caused by the first move searched, a measure of the move ordering
+     * @param evaluationProbes   the lookups in the {@link EvaluationCache}
+     * @param evaluationHits     the lookups in the {@link EvaluationCache} that found the position
+     * @param lazyEvaluations    the evaluations that stopped after the cheap terms, see {@link Evaluator#evaluate(at.htlhl.chess.boardlogic.Field, int, int)}
+     * @param pawnHashProbes     the lookups in the {@link PawnHashTable}, 0 if the evaluator does not use one
+     * @param pawnHashHits       the lookups in the {@link PawnHashTable} that found the pawn structure
+     * @param branchingFactor    the nodes of this iteration divided by the nodes of the previous one, 0 for the first iteration
+     */
+    public record Iteration(int depth, long nodes, long quiescenceNodes, int selectiveDepth, long timeNS,
+                            long cutoffs, long firstMoveCutoffs, long evaluationProbes, long evaluationHits, long lazyEvaluations,
+                            long pawnHashProbes, long pawnHashHits, double branchingFactor) {
+
+        public long getNodesPerSecond() {
+            return timeNS == 0 ? 0 : nodes * 1_000_000_000L / timeNS;
+        }
+
+        public double getFirstMoveCutoffRate() {
+            return rate(firstMoveCutoffs, cutoffs);
+        }
+
+        public double getEvaluationHitRate() {
+            return rate(evaluationHits, evaluationProbes);
+        }
+
+        /**
+         * @return the part of the evaluations that were not cached and stopped after the cheap terms
+         */
+        public double getLazyEvaluationRate() {
+            return rate(lazyEvaluations, evaluationProbes - evaluationHits);
+        }
+
+        public double getPawnHashHitRate() {
+            return rate(pawnHashHits, pawnHashProbes);
+        }
+
+        @Override
+        public String toString() {
+            return "depth " + depth + " seldepth " + selectiveDepth +
+                    " nodes " + nodes + " qnodes " + quiescenceNodes +
+                    " time " + timeNS / 1_000_000 + " ms nps " + getNodesPerSecond() +
+                    " ebf " + Math.round(branchingFactor * 100) / 100.0 +
+                    " first move cutoffs " + percent(getFirstMoveCutoffRate()) +
+                    " eval cache hits " + percent(getEvaluationHitRate()) +
+                    " lazy evals " + percent(getLazyEvaluationRate()) +
+                    " pawn hash hits " + percent(getPawnHashHitRate());
+        }
+    }
+
+    private final List<Iteration> iterations = new ArrayList<>();
+    private long totalTimeNS = 0;
+    private long totalNodes = 0;
+
+    void addIteration(Iteration iteration) {
+        iterations.add(iteration);
+    }
+
+    /**
+     * Called when the search is finished, the nodes and time include the iteration that was stopped
+     */
+    void finish(long totalNodes, long totalTimeNS) {
+        this.totalNodes = totalNodes;
+        this.totalTimeNS = totalTimeNS;
+    }
+
+    /**
+     * @return the completed iterations, from the lowest depth to the highest
+     */
+    public List<Iteration> getIterations() {
+        return Collections.unmodifiableList(iterations);
+    }
+
+    /**
+     * @return the last completed iteration, or null if none was completed
+     */
+    public Iteration getLastIteration() {
+        return iterations.isEmpty() ? null : iterations.get(iterations.size() - 1);
+    }
+
+    public long getTotalNodes() {
+        return totalNodes;
+    }
+
+    public long getTotalTime() {
+        return totalTimeNS;
+    }
+
+    public long getNodesPerSecond() {
+        return totalTimeNS == 0 ? 0 : totalNodes * 1_000_000_000L / totalTimeNS;
+    }
+
+    /**
+     * @return the average branching factor over the completed iterations, 0 if there are less than two
+     */
+    public double getEffectiveBranchingFactor() {
+        if (iterations.size() < 2) return 0;
+        Iteration first = iterations.get(0);
+        Iteration last = getLastIteration();
+        return Math.pow((double) last.nodes() / Math.max(first.nodes(), 1), 1.0 / (last.depth() - first.depth()));
+    }
+
+    @Override
+    public String toString() {
+        var builder = new StringBuilder();
+        for (var iteration : iterations)
+            builder.append(iteration).append('\n');
+        builder.append("total nodes ").append(totalNodes)
+                .append(" time ").append(totalTimeNS / 1_000_000).append(" ms nps ").append(getNodesPerSecond())
+                .append(" ebf ").append(Math.round(getEffectiveBranchingFactor() * 100) / 100.0);
+        return builder.toString();
+    }
+
+    private static double rate(long part, long total) {
+        return total == 0 ? 0 : (double) part / total;
+    }
+
+    private static String percent(double rate) {
+        return Math.round(rate * 1000) / 10.0 + " %";
+    }
+}
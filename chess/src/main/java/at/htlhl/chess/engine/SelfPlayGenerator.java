@@ -0,0 +1,191 @@
+package at.htlhl.chess.engine;
+
+import at.htlhl.chess.boardlogic.Field;
+import at.htlhl.chess.boardlogic.GameState;
+import at.htlhl.chess.boardlogic.Move;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Plays engine against engine games to generate labelled positions for {@link TexelTuner}, written as {@link TrainingData}.
+ * <p>
+ * Every worker thread plays one game at a time with its own two engines, so the throughput grows with the number of cores.
+ * A game starts with {@value #RANDOM_PLIES} random moves and continues with node limited searches, which makes the games
+ * different from each other but reproducible: game n always uses the same random moves.
+ * Quiet positions (not in check, the best move is no capture or promotion) are sampled with their score and labelled with the result
+ * once the game is over. Games are adjudicated when the score stays decisive for {@value #ADJUDICATION_PLIES} plies.
+ * A game in which the board logic fails is left out, its position and stack trace are printed.
+ * <p>
+ * Run with the output file, the number of games and optionally the node limit per move and the number of threads as arguments,
+ * e.g. {@code selfplay.bin 10000 5000}.
+ */
+public class SelfPlayGenerator {
+
+    public static final int DEFAULT_NODES = 5000;
+
+    private static final int RANDOM_PLIES = 8;
+    private static final int MAX_PLIES = 400;
+    private static final double SAMPLE_PROBABILITY = 0.25;
+    /**
+     * Scores of at least this size count as decisive for the adjudication, larger ones are not sampled
+     */
+    private static final int ADJUDICATION_SCORE = 1500;
+    private static final int ADJUDICATION_PLIES = 8;
+
+    private final long nodes;
+    private final FileChannel output;
+    private final AtomicInteger nextGame = new AtomicInteger();
+    private final AtomicInteger finishedGames = new AtomicInteger();
+    private final AtomicInteger failedGames = new AtomicInteger();
+    private final AtomicLong positions = new AtomicLong();
+
+    SelfPlayGenerator(FileChannel output, long nodes) {
+        this.output = output;
+        this.nodes = nodes;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Usage: SelfPlayGenerator <output> <games> [nodes] [threads]");
+            return;
+        }
+        int games = Integer.parseInt(args[1]);
+        long nodes = args.length > 2 ? Long.parseLong(args[2]) : DEFAULT_NODES;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+        try (var output = FileChannel.open(Path.of(args[0]), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            output.write(TrainingData.createHeader());
+            var generator = new SelfPlayGenerator(output, nodes);
+            long start = System.nanoTime();
+            generator.run(games, threads);
+            long time = System.nanoTime() - start;
+            System.out.println("Generated " + generator.positions.get() + " positions in " + generator.finishedGames.get() + " games ("
+                    + generator.failedGames.get() + " failed), " + generator.positions.get() * 3_600_000_000_000L / Math.max(time, 1) + " positions per hour");
+        }
+    }
+
+    /**
+     * Plays the games on the given number of threads and returns once all are written
+     */
+    void run(int games, int threads) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                workers.add(executor.submit(() -> {
+                    for (int game = nextGame.getAndIncrement(); game < games; game = nextGame.getAndIncrement()) {
+                        try {
+                            write(playGame(game));
+                        } catch (RuntimeException e) {
+                            // a failure of the board logic only leaves out this game, but has to be reported
+                            failedGames.incrementAndGet();
+                            System.err.println("Game " + game + " failed");
+                            e.printStackTrace();
+                        }
+                        int finished = finishedGames.incrementAndGet();
+                        if (finished % 100 == 0)
+                            System.out.println(finished + "/" + games + " games, " + positions.get() + " positions");
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> worker : workers)
+                worker.get();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Plays a game
+     *
+     * @param game the number of the game, which seeds the random moves
+     * @return the records of the sampled positions, ready to write
+     */
+    ByteBuffer playGame(int game) {
+        Random random = new Random(game);
+        Field field = new Field();
+        for (int ply = 0; ply < RANDOM_PLIES; ply++) {
+            var moves = field.getLegalMoves();
+            if (moves.isEmpty() || field.getGameState() != GameState.NOT_DECIDED)
+                return ByteBuffer.allocate(0);
+            field.forceMove(moves.get(random.nextInt(moves.size())), false);
+        }
+
+        Engine white = new Engine(field);
+        Engine black = new Engine(field);
+        white.setVerbose(false);
+        black.setVerbose(false);
+
+        var records = ByteBuffer.allocate(MAX_PLIES * TrainingData.RECORD_SIZE).order(ByteOrder.BIG_ENDIAN);
+        int result;
+        try {
+            result = play(field, white, black, random, records);
+        } catch (RuntimeException e) {
+            throw new IllegalStateException("board logic failed in " + field.getFEN(), e);
+        }
+
+        records.flip();
+        for (int start = 0; start < records.limit(); start += TrainingData.RECORD_SIZE)
+            TrainingData.setResult(records, start, result);
+        return records;
+    }
+
+    /**
+     * Plays the game to the end and puts the records of the sampled positions into the buffer
+     *
+     * @return the result of the game
+     */
+    private int play(Field field, Engine white, Engine black, Random random, ByteBuffer records) {
+        int result = TrainingData.DRAW;
+        int decisivePlies = 0;
+        for (int ply = RANDOM_PLIES; ; ply++) {
+            GameState state = field.getGameState();
+            if (state != GameState.NOT_DECIDED || field.getLegalMoves().isEmpty()) {
+                if (state == GameState.WHITE_WIN) result = TrainingData.WHITE_WIN;
+                else if (state == GameState.BLACK_WIN) result = TrainingData.BLACK_WIN;
+                break;
+            }
+            if (ply >= MAX_PLIES) break;
+
+            Engine engine = field.isBlackTurn() ? black : white;
+            engine.updateField(field);
+            EvaluatedMove best = engine.getBestMoves(SearchLimits.nodes(nodes)).getFirst();
+            Move move = best.move();
+            int score = best.evaluation();
+
+            boolean quiet = field.getPlayerInCheck() == null && move.isCapture() == false && move.getPromotionPiece() == 0;
+            if (quiet && Math.abs((long) score) < ADJUDICATION_SCORE && random.nextDouble() < SAMPLE_PROBABILITY)
+                TrainingData.encode(field, score, records);
+
+            decisivePlies = Math.abs((long) score) >= ADJUDICATION_SCORE ? decisivePlies + 1 : 0;
+            if (decisivePlies >= ADJUDICATION_PLIES) {
+                result = score > 0 ? TrainingData.WHITE_WIN : TrainingData.BLACK_WIN;
+                break;
+            }
+            field.forceMove(move, false);
+        }
+        return result;
+    }
+
+    private void write(ByteBuffer records) throws IOException {
+        positions.addAndGet(records.remaining() / TrainingData.RECORD_SIZE);
+        synchronized (output) {
+            while (records.hasRemaining())
+                output.write(records);
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package at.htlhl.chess.engine;
+
+import at.htlhl.chess.boardlogic.util.PieceUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.IntStream;
+
+/**
+ * One endgame table, holding the distance to mate of every position with one material combination, e.g. KQvKR.
+ * The stronger side is always white, positions with the colors the other way round are looked up mirrored (see {@link Tablebases}).
+ * <p>
+ * A position is stored as one byte: {@link #DRAW}, a positive number n if the player to move mates in n moves,
+ * a negative number -n if the player to move is mated in n - 1 moves (-1 is mated now) or {@link #ILLEGAL}.
+ * Castling and en passant are not part of the positions.
+ * <p>
+ * Positions are indexed by the squares of the white king, the black king and the other pieces (white ones first), and the player to move.
+ * The board is mirrored so that the white king is on the files a-d, without pawns also on the ranks 1-4 below the a1-h8 diagonal,
+ * which makes pawnless tables 6.4 and tables with pawns 2 times smaller.
+ */
+public class Tablebase {
+
+    public static final byte ILLEGAL = Byte.MIN_VALUE;
+    public static final byte DRAW = 0;
+    /**
+     * The value of positions that are not solved yet, only used while generating
+     */
+    static final byte UNKNOWN = Byte.MAX_VALUE;
+
+    static final int MAGIC = 0x54424442;
+    static final int VERSION = 1;
+    /**
+     * Magic, version, size and a reserved int, the values follow
+     */
+    static final int HEADER_SIZE = 16;
+
+    /**
+     * The pieces besides the kings, from strong to weak. Pieces of one side are always in this order.
+     */
+    static final String PIECE_ORDER = "QRBNP";
+    private static final byte[] PIECE_TYPES = {PieceUtil.QUEEN_MASK, PieceUtil.ROOK_MASK, PieceUtil.BISHOP_MASK, PieceUtil.KNIGHT_MASK, PieceUtil.PAWN_MASK};
+
+    /**
+     * The squares the white king is mirrored into, without and with pawns
+     */
+    private static final int[] PAWNLESS_KING_SQUARES = new int[10];
+    private static final int[] PAWN_KING_SQUARES = new int[32];
+    private static final int[] PAWNLESS_KING_INDEX = new int[64];
+    private static final int[] PAWN_KING_INDEX = new int[64];
+    /**
+     * The symmetries (see {@link #transform(int, int)}) that move a white king on the square to the a1-d1-d4 triangle,
+     * two for the squares that end up on the diagonal
+     */
+    private static final int[][] PAWNLESS_TRANSFORMATIONS = new int[64][];
+
+    static {
+        int pawnless = 0;
+        int pawn = 0;
+        for (int square = 0; square < 64; square++) {
+            int x = square % 8;
+            int rank = 7 - square / 8;
+            PAWNLESS_KING_INDEX[square] = -1;
+            PAWN_KING_INDEX[square] = -1;
+            if (x <= 3 && rank <= x) {
+                PAWNLESS_KING_INDEX[square] = pawnless;
+                PAWNLESS_KING_SQUARES[pawnless++] = square;
+            }
+            if (x <= 3) {
+                PAWN_KING_INDEX[square] = pawn;
+                PAWN_KING_SQUARES[pawn++] = square;
+            }
+        }
+        for (int square = 0; square < 64; square++) {
+            int s = square;
+            PAWNLESS_TRANSFORMATIONS[square] = IntStream.range(0, 8)
+                    .filter(transformation -> PAWNLESS_KING_INDEX[transform(s, transformation)] >= 0)
+                    .toArray();
+        }
+    }
+
+    private final String whitePieces;
+    private final String blackPieces;
+    /**
+     * The pieces in index order: white king, black king, the other white pieces and the other black pieces
+     */
+    private final byte[] pieces;
+    private final boolean hasPawns;
+    private final int size;
+    private final ByteBuffer values;
+
+    /**
+     * @param whitePieces the white pieces besides the king, in {@link #PIECE_ORDER}
+     * @param blackPieces the black pieces besides the king, in {@link #PIECE_ORDER}
+     * @param values      one byte for every index
+     */
+    Tablebase(String whitePieces, String blackPieces, ByteBuffer values) {
+        this.whitePieces = whitePieces;
+        this.blackPieces = blackPieces;
+        this.hasPawns = (whitePieces + blackPieces).indexOf('P') >= 0;
+        this.pieces = new byte[2 + whitePieces.length() + blackPieces.length()];
+        pieces[0] = PieceUtil.WHITE_KING;
+        pieces[1] = PieceUtil.BLACK_KING;
+        for (int i = 0; i < whitePieces.length(); i++)
+            pieces[2 + i] = (byte) (PIECE_TYPES[PIECE_ORDER.indexOf(whitePieces.charAt(i))] | PieceUtil.WHITE);
+        for (int i = 0; i < blackPieces.length(); i++)
+            pieces[2 + whitePieces.length() + i] = (byte) (PIECE_TYPES[PIECE_ORDER.indexOf(blackPieces.charAt(i))] | PieceUtil.BLACK);
+        this.size = getSize(pieces.length, hasPawns);
+        if (values.capacity() != size)
+            throw new IllegalArgumentException(getName() + " needs " + size + " values, got " + values.capacity());
+        this.values = values;
+    }
+
+    /**
+     * Maps a table file written by {@link #write(Path)}
+     */
+    static Tablebase map(Path file) throws IOException {
+        String name = file.getFileName().toString();
+        name = name.substring(0, name.lastIndexOf('.'));
+        int separator = name.indexOf('v');
+        if (name.startsWith("K") == false || separator < 0 || name.charAt(separator + 1) != 'K')
+            throw new IOException("Invalid tablebase name: " + name);
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            var header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.BIG_ENDIAN);
+            channel.read(header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION)
+                throw new IOException(file + " is not a tablebase of version " + VERSION);
+            int size = header.getInt();
+            if (channel.size() != HEADER_SIZE + (long) size)
+                throw new IOException(file + " is truncated");
+            return new Tablebase(name.substring(1, separator), name.substring(separator + 2),
+                    channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, size));
+        }
+    }
+
+    void write(Path file) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            var header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.BIG_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(size).putInt(0).flip();
+            channel.write(header);
+            channel.write(values.duplicate().clear());
+        }
+    }
+
+    static int getSize(int pieceCount, boolean hasPawns) {
+        int size = (hasPawns ? PAWN_KING_SQUARES.length : PAWNLESS_KING_SQUARES.length) * 2;
+        for (int i = 1; i < pieceCount; i++)
+            size *= 64;
+        return size;
+    }
+
+    /**
+     * Positions that are the same by symmetry always get the same index, the smallest one of the mirrored positions
+     *
+     * @param squares the squares of the pieces in index order, see {@link #getPieces()}
+     */
+    int getIndex(int[] squares, boolean blackToMove) {
+        if (hasPawns)
+            return getIndex(squares, blackToMove, squares[0] % 8 > 3 ? 1 : 0);
+        int[] transformations = PAWNLESS_TRANSFORMATIONS[squares[0]];
+        int index = getIndex(squares, blackToMove, transformations[0]);
+        for (int i = 1; i < transformations.length; i++)
+            index = Math.min(index, getIndex(squares, blackToMove, transformations[i]));
+        return index;
+    }
+
+    private int getIndex(int[] squares, boolean blackToMove, int transformation) {
+        int index = (hasPawns ? PAWN_KING_INDEX : PAWNLESS_KING_INDEX)[transform(squares[0], transformation)];
+        for (int i = 1; i < pieces.length; i++)
+            index = index * 64 + transform(squares[i], transformation);
+        return index * 2 + (blackToMove ? 1 : 0);
+    }
+
+    /**
+     * The reverse of {@link #getIndex(int[], boolean)}, gives the position with the white king in the mirrored area.
+     * Positions on the diagonal that are stored at the index of their mirror image give a different index back.
+     *
+     * @return true if black is to move
+     */
+    boolean getSquares(int index, int[] squares) {
+        boolean blackToMove = (index & 1) == 1;
+        index >>>= 1;
+        for (int i = pieces.length - 1; i > 0; i--) {
+            squares[i] = index & 63;
+            index >>>= 6;
+        }
+        squares[0] = (hasPawns ? PAWN_KING_SQUARES : PAWNLESS_KING_SQUARES)[index];
+        return blackToMove;
+    }
+
+    /**
+     * Applies one of the 8 symmetries of the board: bit 2 mirrors at the a1-h8 diagonal, bit 0 mirrors the files and bit 1 the ranks.
+     * Only the transformations 0 and 1 keep pawns moving in the right direction.
+     */
+    static int transform(int square, int transformation) {
+        if ((transformation & 4) != 0) square = (square % 8) * 8 + square / 8;
+        if ((transformation & 1) != 0) square ^= 7;
+        if ((transformation & 2) != 0) square ^= 56;
+        return square;
+    }
+
+    byte getValue(int index) {
+        return values.get(index);
+    }
+
+    /**
+     * @return the number of plies until mate, 0 for draws
+     */
+    public static int toPlies(byte value) {
+        if (value > 0) return value * 2 - 1;
+        if (value < 0 && value != ILLEGAL) return (-value - 1) * 2;
+        return 0;
+    }
+
+    /**
+     * @param plies the number of plies until mate, odd if the player to move wins
+     */
+    static byte fromPlies(int plies) {
+        int value = plies % 2 == 1 ? (plies + 1) / 2 : -plies / 2 - 1;
+        if (value >= UNKNOWN || value <= ILLEGAL)
+            throw new IllegalStateException("Distance to mate of " + plies + " plies does not fit into a tablebase");
+        return (byte) value;
+    }
+
+    /**
+     * @return the index of the piece in {@link #PIECE_ORDER}, -1 for kings and empty squares
+     */
+    static int getOrderIndex(byte piece) {
+        if (PieceUtil.isQueen(piece)) return 0;
+        if (PieceUtil.isRook(piece)) return 1;
+        if (PieceUtil.isBishop(piece)) return 2;
+        if (PieceUtil.isKnight(piece)) return 3;
+        if (PieceUtil.isPawn(piece)) return 4;
+        return -1;
+    }
+
+    /**
+     * @return a number identifying the material, pieces given as indices in {@link #PIECE_ORDER} (-1 if there is none), stronger first
+     */
+    static int getMaterialKey(int white1, int white2, int black1, int black2) {
+        return (((white1 + 1) * 6 + white2 + 1) * 6 + black1 + 1) * 6 + black2 + 1;
+    }
+
+    int getMaterialKey() {
+        return getMaterialKey(getOrderIndex(whitePieces, 0), getOrderIndex(whitePieces, 1), getOrderIndex(blackPieces, 0), getOrderIndex(blackPieces, 1));
+    }
+
+    private static int getOrderIndex(String pieces, int i) {
+        return i < pieces.length() ? PIECE_ORDER.indexOf(pieces.charAt(i)) : -1;
+    }
+
+    public String getName() {
+        return "K" + whitePieces + "vK" + blackPieces;
+    }
+
+    /**
+     * @return the pieces in index order: white king, black king, the other white pieces and the other black pieces
+     */
+    byte[] getPieces() {
+        return pieces;
+    }
+
+    public int getPieceCount() {
+        return pieces.length;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    boolean hasPawns() {
+        return hasPawns;
+    }
+}
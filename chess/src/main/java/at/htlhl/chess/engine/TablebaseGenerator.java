@@ -0,0 +1,561 @@
+package at.htlhl.chess.engine;
+
+import at.htlhl.chess.boardlogic.util.PieceUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.IntStream;
+
+/**
+ * Generates the endgame tables read by {@link Tablebases} with retrograde analysis.
+ * <p>
+ * Every position of a table is generated forward once, to count its moves and to look up its captures and promotions
+ * in the smaller tables generated before. Then the table is solved level by level, ply by ply from mate:
+ * the predecessors of positions lost in n plies are won in n + 1, and a position is lost once all its moves lead to positions
+ * the opponent wins. Both passes run in parallel on all cores.
+ * <p>
+ * The tables have at most 4 pieces and are small, so the positions are generated with a board array and precomputed move tables
+ * instead of {@link at.htlhl.chess.boardlogic.Field}, which would need a new object for every one of the millions of positions.
+ * En passant captures are not part of the tables, which only matters for the few KPvKP positions right after a double step.
+ * <p>
+ * Run with the output directory and the maximum number of pieces as arguments, e.g. {@code tablebases 4}.
+ */
+public class TablebaseGenerator {
+
+    private static final int[][] KNIGHT_TARGETS = new int[64][];
+    private static final int[][] KING_TARGETS = new int[64][];
+    /**
+     * The squares in each direction, the first 4 directions are the ones of the rook, the other 4 the ones of the bishop
+     */
+    private static final int[][][] RAYS = new int[64][8][];
+    private static final int[][] DIRECTIONS = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}, {1, 1}, {1, -1}, {-1, 1}, {-1, -1}};
+    private static final byte[] PROMOTION_PIECES = {PieceUtil.QUEEN_MASK, PieceUtil.ROOK_MASK, PieceUtil.BISHOP_MASK, PieceUtil.KNIGHT_MASK};
+    /**
+     * More than enough for the moves of 3 pieces with 4 promotions each
+     */
+    private static final int MAX_MOVES = 128;
+
+    static {
+        int[][] knightSteps = {{1, 2}, {2, 1}, {2, -1}, {1, -2}, {-1, -2}, {-2, -1}, {-2, 1}, {-1, 2}};
+        for (int square = 0; square < 64; square++) {
+            int x = square % 8;
+            int y = square / 8;
+            KNIGHT_TARGETS[square] = targets(x, y, knightSteps);
+            KING_TARGETS[square] = targets(x, y, DIRECTIONS);
+            for (int direction = 0; direction < 8; direction++) {
+                var ray = new ArrayList<Integer>();
+                for (int tx = x + DIRECTIONS[direction][0], ty = y + DIRECTIONS[direction][1];
+                     tx >= 0 && tx < 8 && ty >= 0 && ty < 8;
+                     tx += DIRECTIONS[direction][0], ty += DIRECTIONS[direction][1])
+                    ray.add(ty * 8 + tx);
+                RAYS[square][direction] = ray.stream().mapToInt(Integer::intValue).toArray();
+            }
+        }
+    }
+
+    private static int[] targets(int x, int y, int[][] steps) {
+        return Arrays.stream(steps)
+                .filter(step -> x + step[0] >= 0 && x + step[0] < 8 && y + step[1] >= 0 && y + step[1] < 8)
+                .mapToInt(step -> (y + step[1]) * 8 + x + step[0])
+                .toArray();
+    }
+
+    /**
+     * The tables generated so far, the captures and promotions of a table lead into them
+     */
+    private final Tablebases tablebases = new Tablebases();
+
+    public static void main(String[] args) throws IOException {
+        Path directory = Path.of(args.length > 0 ? args[0] : "tablebases");
+        int maxPieces = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        new TablebaseGenerator().generateAll(directory, maxPieces);
+    }
+
+    /**
+     * Generates and writes all tables with up to the given number of pieces, smaller ones first
+     */
+    public void generateAll(Path directory, int maxPieces) throws IOException {
+        if (maxPieces < 3 || maxPieces > 4)
+            throw new IllegalArgumentException("Tables with 3 or 4 pieces can be generated, not " + maxPieces);
+        Files.createDirectories(directory);
+        for (String[] material : getMaterials(maxPieces)) {
+            long start = System.nanoTime();
+            Tablebase table = generate(material[0], material[1]);
+            table.write(directory.resolve(table.getName() + ".tb"));
+            tablebases.add(table);
+            printSummary(table, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @return all white and black pieces besides the kings with white the stronger side, ordered so that
+     * captures and promotions always lead to earlier tables: by the number of pieces, then by the number of pawns
+     */
+    static List<String[]> getMaterials(int maxPieces) {
+        var sides = new ArrayList<String>();
+        sides.add("");
+        for (int i = 0; i < Tablebase.PIECE_ORDER.length(); i++) {
+            sides.add(Tablebase.PIECE_ORDER.substring(i, i + 1));
+            for (int j = i; j < Tablebase.PIECE_ORDER.length(); j++)
+                sides.add("" + Tablebase.PIECE_ORDER.charAt(i) + Tablebase.PIECE_ORDER.charAt(j));
+        }
+        var materials = new ArrayList<String[]>();
+        for (String white : sides)
+            for (String black : sides) {
+                int pieces = 2 + white.length() + black.length();
+                if (pieces > 2 && pieces <= maxPieces && isStronger(white, black))
+                    materials.add(new String[]{white, black});
+            }
+        materials.sort(Comparator.<String[]>comparingInt(m -> m[0].length() + m[1].length())
+                .thenComparingLong(m -> (m[0] + m[1]).chars().filter(c -> c == 'P').count()));
+        return materials;
+    }
+
+    /**
+     * @return true if the first pieces are the same or stronger, more pieces are stronger, then stronger pieces
+     */
+    private static boolean isStronger(String first, String second) {
+        if (first.length() != second.length())
+            return first.length() > second.length();
+        for (int i = 0; i < first.length(); i++) {
+            int difference = Tablebase.PIECE_ORDER.indexOf(first.charAt(i)) - Tablebase.PIECE_ORDER.indexOf(second.charAt(i));
+            if (difference != 0)
+                return difference < 0;
+        }
+        return true;
+    }
+
+    /**
+     * Solves one table, all tables its captures and promotions lead to have to be generated already
+     */
+    Tablebase generate(String whitePieces, String blackPieces) {
+        byte[] values = new byte[Tablebase.getSize(2 + whitePieces.length() + blackPieces.length(),
+                (whitePieces + blackPieces).indexOf('P') >= 0)];
+        var table = new Tablebase(whitePieces, blackPieces, ByteBuffer.wrap(values));
+        var generation = new Generation(table, values);
+
+        IntStream.range(0, values.length).parallel().forEach(generation::initialize);
+        for (int plies = 0; ; plies++) {
+            int[] frontier = generation.activate(plies);
+            if (frontier.length == 0 && generation.maxPendingPlies.get() <= plies)
+                break;
+            int level = plies;
+            Arrays.stream(frontier).parallel().forEach(index -> generation.propagate(index, level, level % 2 == 0));
+        }
+        for (int i = 0; i < values.length; i++)
+            if (values[i] == Tablebase.UNKNOWN)
+                values[i] = Tablebase.DRAW;
+        return table;
+    }
+
+    private static void printSummary(Tablebase table, long timeNS) {
+        long wins = 0, losses = 0, draws = 0;
+        int longest = 0;
+        for (int i = 0; i < table.getSize(); i++) {
+            byte value = table.getValue(i);
+            if (value == Tablebase.ILLEGAL) continue;
+            if (value > 0) wins++;
+            else if (value < 0) losses++;
+            else draws++;
+            longest = Math.max(longest, Tablebase.toPlies(value));
+        }
+        System.out.println(table.getName() + ": " + wins + " wins, " + losses + " losses, " + draws + " draws, " +
+                "longest mate " + longest + " plies, " + timeNS / 1_000_000 + " ms");
+    }
+
+    /**
+     * The state of one table while it is solved
+     */
+    private class Generation {
+
+        private final Tablebase table;
+        private final byte[] values;
+        private final byte[] pieces;
+        /**
+         * The number of distinct successors that are not known to be won by the opponent yet, a draw by a capture or promotion counts as one
+         */
+        private final AtomicIntegerArray counters;
+        /**
+         * The plies of a win by a capture or promotion (positive), or of the loss once all moves lose (negative), applied at that level
+         */
+        private final short[] pending;
+        /**
+         * The plies of the longest loss by a capture or promotion (unsigned), a position is not lost faster than that
+         */
+        private final byte[] lossFloors;
+        private final AtomicInteger maxPendingPlies = new AtomicInteger();
+        private final ThreadLocal<Position> positions;
+
+        Generation(Tablebase table, byte[] values) {
+            this.table = table;
+            this.values = values;
+            this.pieces = table.getPieces();
+            this.counters = new AtomicIntegerArray(values.length);
+            this.pending = new short[values.length];
+            this.lossFloors = new byte[values.length];
+            this.positions = ThreadLocal.withInitial(() -> new Position(pieces.length));
+        }
+
+        /**
+         * Generates the moves of the position once
+         */
+        void initialize(int index) {
+            Position position = positions.get();
+            // positions stored at the index of their mirror image are never probed, they count as illegal
+            if (position.set(table, index) == false || table.getIndex(position.squares, position.blackToMove) != index) {
+                values[index] = Tablebase.ILLEGAL;
+                return;
+            }
+            values[index] = Tablebase.UNKNOWN;
+
+            int successors = 0;
+            int bestWin = Integer.MAX_VALUE;
+            int longestLoss = -1;
+            boolean drawExit = false;
+            boolean hasMoves = false;
+            int[] squares = position.squares;
+            int[] children = position.children;
+            for (int piece = 0; piece < pieces.length; piece++) {
+                if (PieceUtil.isWhite(pieces[piece]) == position.blackToMove) continue;
+                int count = position.generateMoves(piece);
+                for (int i = 0; i < count; i++) {
+                    int target = position.moves[i];
+                    byte promotion = position.promotions[i];
+                    int captured = position.pieceOn(target);
+                    int from = squares[piece];
+                    if (position.isLegalMove(piece, target) == false) continue;
+                    hasMoves = true;
+
+                    if (captured < 0 && promotion == PieceUtil.EMPTY) {
+                        squares[piece] = target;
+                        children[successors++] = table.getIndex(squares, !position.blackToMove);
+                        squares[piece] = from;
+                        continue;
+                    }
+                    int value = position.probeExit(piece, target, captured, promotion, tablebases);
+                    if (value == Tablebases.NOT_FOUND)
+                        throw new IllegalStateException("A capture or promotion of " + table.getName() + " leads to a missing table");
+                    if (value < 0) bestWin = Math.min(bestWin, Tablebase.toPlies((byte) value) + 1);
+                    else if (value > 0) longestLoss = Math.max(longestLoss, Tablebase.toPlies((byte) value) + 1);
+                    else drawExit = true;
+                }
+            }
+
+            if (hasMoves == false) {
+                values[index] = position.isInCheck() ? Tablebase.fromPlies(0) : Tablebase.DRAW;
+                return;
+            }
+            int distinct = sortDistinct(children, successors);
+            if (bestWin != Integer.MAX_VALUE) {
+                setPending(index, bestWin);
+            } else if (distinct == 0) {
+                if (drawExit) values[index] = Tablebase.DRAW;
+                else setPending(index, -longestLoss);
+            }
+            counters.set(index, distinct + (drawExit ? 1 : 0));
+            lossFloors[index] = (byte) Math.max(longestLoss, 0);
+        }
+
+        /**
+         * Applies the pending values of the level
+         *
+         * @return the positions with a mate in exactly the given number of plies
+         */
+        int[] activate(int plies) {
+            byte level = Tablebase.fromPlies(plies);
+            return IntStream.range(0, values.length).parallel().filter(index -> {
+                if (values[index] == Tablebase.UNKNOWN && Math.abs(pending[index]) == plies && pending[index] != 0)
+                    values[index] = level;
+                return values[index] == level;
+            }).toArray();
+        }
+
+        /**
+         * Updates the predecessors of a position solved at the level
+         *
+         * @param lost true if the player to move in the position loses
+         */
+        void propagate(int index, int plies, boolean lost) {
+            Position position = positions.get();
+            position.set(table, index);
+            int count = position.generatePredecessors(table);
+            for (int i = 0; i < count; i++) {
+                int predecessor = position.children[i];
+                if (values[predecessor] != Tablebase.UNKNOWN) continue;
+                if (lost) {
+                    values[predecessor] = Tablebase.fromPlies(plies + 1);
+                } else if (counters.decrementAndGet(predecessor) == 0 && pending[predecessor] <= 0) {
+                    int loss = Math.max(plies + 1, Byte.toUnsignedInt(lossFloors[predecessor]));
+                    if (loss == plies + 1) values[predecessor] = Tablebase.fromPlies(loss);
+                    else setPending(predecessor, -loss);
+                }
+            }
+        }
+
+        private void setPending(int index, int plies) {
+            pending[index] = (short) plies;
+            maxPendingPlies.accumulateAndGet(Math.abs(plies), Math::max);
+        }
+    }
+
+    /**
+     * Sorts the start of the array and removes duplicates
+     *
+     * @return the number of distinct values
+     */
+    private static int sortDistinct(int[] array, int count) {
+        Arrays.sort(array, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++)
+            if (distinct == 0 || array[distinct - 1] != array[i])
+                array[distinct++] = array[i];
+        return distinct;
+    }
+
+    /**
+     * A position of a table on a board array, reused for every position a thread looks at
+     */
+    private static class Position {
+
+        private final byte[] board = new byte[64];
+        private final int[] squares;
+        private final byte[] pieces = new byte[4];
+        private final int[] moves = new int[MAX_MOVES];
+        private final byte[] promotions = new byte[MAX_MOVES];
+        private final int[] children = new int[MAX_MOVES];
+        private final byte[] exitPieces = new byte[4];
+        private final int[] exitSquares = new int[4];
+        private int count;
+        private boolean blackToMove;
+
+        Position(int count) {
+            this.count = count;
+            this.squares = new int[count];
+        }
+
+        /**
+         * @return false if the position is illegal: two pieces on one square, a pawn on the first or last rank
+         * or the player not to move in check
+         */
+        boolean set(Tablebase table, int index) {
+            Arrays.fill(board, PieceUtil.EMPTY);
+            count = squares.length;
+            System.arraycopy(table.getPieces(), 0, pieces, 0, count);
+            blackToMove = table.getSquares(index, squares);
+            boolean legal = true;
+            for (int i = 0; i < count; i++) {
+                int square = squares[i];
+                if (board[square] != PieceUtil.EMPTY || (PieceUtil.isPawn(pieces[i]) && (square < 8 || square >= 56)))
+                    legal = false;
+                board[square] = pieces[i];
+            }
+            return legal && isAttacked(squares[blackToMove ? 0 : 1], !blackToMove) == false;
+        }
+
+        /**
+         * @return the index of the piece on the square, -1 if it is empty
+         */
+        int pieceOn(int square) {
+            if (board[square] == PieceUtil.EMPTY) return -1;
+            for (int i = 0; i < count; i++)
+                if (squares[i] == square) return i;
+            return -1;
+        }
+
+        boolean isInCheck() {
+            return isAttacked(squares[blackToMove ? 1 : 0], blackToMove);
+        }
+
+        /**
+         * Generates the pseudo legal moves of the piece into {@link #moves} and {@link #promotions}
+         *
+         * @return the number of moves
+         */
+        int generateMoves(int piece) {
+            byte type = pieces[piece];
+            int from = squares[piece];
+            boolean white = PieceUtil.isWhite(type);
+            int moveCount = 0;
+            if (PieceUtil.isPawn(type)) {
+                int forward = white ? -8 : 8;
+                int x = from % 8;
+                int target = from + forward;
+                if (board[target] == PieceUtil.EMPTY) {
+                    moveCount = addPawnMove(moveCount, target);
+                    int startRow = white ? 6 : 1;
+                    if (from / 8 == startRow && board[target + forward] == PieceUtil.EMPTY)
+                        moveCount = addPawnMove(moveCount, target + forward);
+                }
+                if (x > 0 && isOpponent(board[target - 1], white))
+                    moveCount = addPawnMove(moveCount, target - 1);
+                if (x < 7 && isOpponent(board[target + 1], white))
+                    moveCount = addPawnMove(moveCount, target + 1);
+                return moveCount;
+            }
+            if (PieceUtil.isKnight(type) || PieceUtil.isKing(type)) {
+                for (int target : PieceUtil.isKnight(type) ? KNIGHT_TARGETS[from] : KING_TARGETS[from])
+                    if (board[target] == PieceUtil.EMPTY || isOpponent(board[target], white))
+                        moveCount = addMove(moveCount, target, PieceUtil.EMPTY);
+                return moveCount;
+            }
+            for (int direction = firstDirection(type); direction < lastDirection(type); direction++)
+                for (int target : RAYS[from][direction]) {
+                    if (board[target] == PieceUtil.EMPTY || isOpponent(board[target], white))
+                        moveCount = addMove(moveCount, target, PieceUtil.EMPTY);
+                    if (board[target] != PieceUtil.EMPTY) break;
+                }
+            return moveCount;
+        }
+
+        private int addPawnMove(int moveCount, int target) {
+            if (target >= 8 && target < 56)
+                return addMove(moveCount, target, PieceUtil.EMPTY);
+            for (byte promotion : PROMOTION_PIECES)
+                moveCount = addMove(moveCount, target, promotion);
+            return moveCount;
+        }
+
+        private int addMove(int moveCount, int target, byte promotion) {
+            moves[moveCount] = target;
+            promotions[moveCount] = promotion;
+            return moveCount + 1;
+        }
+
+        /**
+         * @return true if the move does not leave the own king in check
+         */
+        boolean isLegalMove(int piece, int target) {
+            int from = squares[piece];
+            byte captured = board[target];
+            board[target] = board[from];
+            board[from] = PieceUtil.EMPTY;
+            boolean white = PieceUtil.isWhite(pieces[piece]);
+            int king = PieceUtil.isKing(pieces[piece]) ? target : squares[white ? 0 : 1];
+            boolean legal = isAttacked(king, !white) == false;
+            board[from] = board[target];
+            board[target] = captured;
+            return legal;
+        }
+
+        /**
+         * Looks up the position after a capture or promotion in the smaller tables
+         *
+         * @return the value for the opponent, see {@link Tablebases#probe(byte[], int[], int, boolean)}
+         */
+        int probeExit(int piece, int target, int captured, byte promotion, Tablebases tablebases) {
+            int exitCount = 0;
+            for (int i = 0; i < count; i++) {
+                if (i == captured) continue;
+                exitPieces[exitCount] = pieces[i];
+                exitSquares[exitCount] = squares[i];
+                if (i == piece) {
+                    exitSquares[exitCount] = target;
+                    if (promotion != PieceUtil.EMPTY)
+                        exitPieces[exitCount] = (byte) (promotion | (pieces[i] & (PieceUtil.WHITE | PieceUtil.BLACK)));
+                }
+                exitCount++;
+            }
+            return tablebases.probe(exitPieces, exitSquares, exitCount, !blackToMove);
+        }
+
+        /**
+         * Generates the indices of the positions the last move could have been played in into {@link #children}, without duplicates.
+         * Only moves inside the table count, so there are no captures and no promotions.
+         *
+         * @return the number of predecessors
+         */
+        int generatePredecessors(Tablebase table) {
+            int predecessorCount = 0;
+            boolean white = blackToMove;
+            for (int piece = 0; piece < count; piece++) {
+                byte type = pieces[piece];
+                if (PieceUtil.isWhite(type) != white) continue;
+                int to = squares[piece];
+                int moveCount = 0;
+                if (PieceUtil.isPawn(type)) {
+                    int backward = white ? 8 : -8;
+                    int origin = to + backward;
+                    if (origin >= 8 && origin < 56 && board[origin] == PieceUtil.EMPTY) {
+                        moveCount = addMove(moveCount, origin, PieceUtil.EMPTY);
+                        int doubleStepRow = white ? 4 : 3;
+                        if (to / 8 == doubleStepRow && board[origin + backward] == PieceUtil.EMPTY)
+                            moveCount = addMove(moveCount, origin + backward, PieceUtil.EMPTY);
+                    }
+                } else if (PieceUtil.isKnight(type) || PieceUtil.isKing(type)) {
+                    for (int origin : PieceUtil.isKnight(type) ? KNIGHT_TARGETS[to] : KING_TARGETS[to])
+                        if (board[origin] == PieceUtil.EMPTY)
+                            moveCount = addMove(moveCount, origin, PieceUtil.EMPTY);
+                } else {
+                    for (int direction = firstDirection(type); direction < lastDirection(type); direction++)
+                        for (int origin : RAYS[to][direction]) {
+                            if (board[origin] != PieceUtil.EMPTY) break;
+                            moveCount = addMove(moveCount, origin, PieceUtil.EMPTY);
+                        }
+                }
+
+                for (int i = 0; i < moveCount; i++) {
+                    int origin = moves[i];
+                    board[origin] = type;
+                    board[to] = PieceUtil.EMPTY;
+                    squares[piece] = origin;
+                    // the opponent of the player that moved must not be in check before the move
+                    if (isAttacked(squares[white ? 1 : 0], white) == false)
+                        children[predecessorCount++] = table.getIndex(squares, !blackToMove);
+                    squares[piece] = to;
+                    board[to] = type;
+                    board[origin] = PieceUtil.EMPTY;
+                }
+            }
+            return sortDistinct(children, predecessorCount);
+        }
+
+        /**
+         * @return true if a piece of the given color attacks the square
+         */
+        boolean isAttacked(int square, boolean byWhite) {
+            byte color = byWhite ? PieceUtil.WHITE : PieceUtil.BLACK;
+            for (int origin : KNIGHT_TARGETS[square])
+                if (board[origin] == (byte) (PieceUtil.KNIGHT_MASK | color)) return true;
+            for (int origin : KING_TARGETS[square])
+                if (board[origin] == (byte) (PieceUtil.KING_MASK | color)) return true;
+            int pawnRow = square / 8 + (byWhite ? 1 : -1);
+            if (pawnRow >= 0 && pawnRow < 8) {
+                byte pawn = (byte) (PieceUtil.PAWN_MASK | color);
+                int x = square % 8;
+                if (x > 0 && board[pawnRow * 8 + x - 1] == pawn) return true;
+                if (x < 7 && board[pawnRow * 8 + x + 1] == pawn) return true;
+            }
+            for (int direction = 0; direction < 8; direction++) {
+                byte slider = (byte) ((direction < 4 ? PieceUtil.ROOK_MASK : PieceUtil.BISHOP_MASK) | color);
+                byte queen = (byte) (PieceUtil.QUEEN_MASK | color);
+                for (int origin : RAYS[square][direction]) {
+                    byte piece = board[origin];
+                    if (piece == PieceUtil.EMPTY) continue;
+                    if (piece == slider || piece == queen) return true;
+                    break;
+                }
+            }
+            return false;
+        }
+
+        private static boolean isOpponent(byte piece, boolean white) {
+            return piece != PieceUtil.EMPTY && PieceUtil.isWhite(piece) != white;
+        }
+
+        private static int firstDirection(byte type) {
+            return PieceUtil.isBishop(type) ? 4 : 0;
+        }
+
+        private static int lastDirection(byte type) {
+            return PieceUtil.isRook(type) ? 4 : 8;
+        }
+    }
+}
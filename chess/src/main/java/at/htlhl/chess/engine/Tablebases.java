@@ -0,0 +1,145 @@
+package at.htlhl.chess.engine;
+
+import at.htlhl.chess.boardlogic.Field;
+import at.htlhl.chess.boardlogic.util.PieceUtil;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The endgame tables of a directory, written by {@link TablebaseGenerator}.
+ * The files are memory mapped, a probe reads a single byte of one table, so it is cheap enough for every node of the search.
+ * Probes only read the mapped buffers, one instance can be shared by engines on different threads.
+ */
+public class Tablebases {
+
+    /**
+     * The result of a probe for a position without table
+     */
+    public static final int NOT_FOUND = Integer.MIN_VALUE;
+
+    /**
+     * The tables by {@link Tablebase#getMaterialKey()}
+     */
+    private final Tablebase[] tables = new Tablebase[6 * 6 * 6 * 6];
+    private int maxPieces = 2;
+
+    Tablebases() {
+    }
+
+    /**
+     * Maps every .tb file of the directory
+     *
+     * @throws IOException if a file cannot be read or is not a table
+     */
+    public static Tablebases open(Path directory) throws IOException {
+        var tablebases = new Tablebases();
+        try (var files = Files.newDirectoryStream(directory, "*.tb")) {
+            for (Path file : files)
+                tablebases.add(Tablebase.map(file));
+        }
+        return tablebases;
+    }
+
+    void add(Tablebase table) {
+        tables[table.getMaterialKey()] = table;
+        maxPieces = Math.max(maxPieces, table.getPieceCount());
+    }
+
+    /**
+     * @return the number of pieces of the largest table, positions with more pieces are never found
+     */
+    public int getMaxPieces() {
+        return maxPieces;
+    }
+
+    /**
+     * Looks the position up, positions with castling rights or a possible en passant capture are not in the tables,
+     * neither are illegal ones
+     *
+     * @return the value of the position for the player to move (see {@link Tablebase}) or {@link #NOT_FOUND}
+     */
+    public int probe(Field field) {
+        if (field.getPieceCount() > maxPieces || field.getCastlingInformation() != 0 || field.getPossibleEnPassantSquare() != null)
+            return NOT_FOUND;
+        byte[] board = field.getBoard();
+        byte[] pieces = new byte[4];
+        int[] squares = new int[4];
+        int count = 0;
+        for (int square = 0; square < 64 && count < 4; square++) {
+            if (PieceUtil.isEmpty(board[square])) continue;
+            pieces[count] = board[square];
+            squares[count++] = square;
+        }
+        int value = probe(pieces, squares, count, field.isBlackTurn());
+        return value == Tablebase.ILLEGAL ? NOT_FOUND : value;
+    }
+
+    /**
+     * Looks up the position with the given pieces, in any order
+     *
+     * @return the value of the position for the player to move (see {@link Tablebase}) or {@link #NOT_FOUND}
+     */
+    int probe(byte[] pieces, int[] squares, int count, boolean blackToMove) {
+        if (count == 2)
+            return Tablebase.DRAW;
+        if (count > 4)
+            return NOT_FOUND;
+
+        // kings first, then the other pieces of each side from strong to weak
+        int whiteKing = -1, blackKing = -1;
+        int[] white = {-1, -1}, whiteSquares = new int[2];
+        int[] black = {-1, -1}, blackSquares = new int[2];
+        int whiteCount = 0, blackCount = 0;
+        for (int i = 0; i < count; i++) {
+            byte piece = pieces[i];
+            if (PieceUtil.isKing(piece)) {
+                if (PieceUtil.isWhite(piece)) whiteKing = squares[i];
+                else blackKing = squares[i];
+            } else if (PieceUtil.isWhite(piece)) {
+                if (whiteCount == 2) return NOT_FOUND;
+                whiteCount = insert(white, whiteSquares, whiteCount, Tablebase.getOrderIndex(piece), squares[i]);
+            } else {
+                if (blackCount == 2) return NOT_FOUND;
+                blackCount = insert(black, blackSquares, blackCount, Tablebase.getOrderIndex(piece), squares[i]);
+            }
+        }
+        if (whiteKing < 0 || blackKing < 0)
+            return NOT_FOUND;
+
+        int[] ordered = new int[count];
+        Tablebase table = tables[Tablebase.getMaterialKey(white[0], white[1], black[0], black[1])];
+        if (table != null) {
+            ordered[0] = whiteKing;
+            ordered[1] = blackKing;
+            System.arraycopy(whiteSquares, 0, ordered, 2, whiteCount);
+            System.arraycopy(blackSquares, 0, ordered, 2 + whiteCount, blackCount);
+        } else {
+            // the tables only have the stronger side as white, swap the colors by mirroring the ranks
+            table = tables[Tablebase.getMaterialKey(black[0], black[1], white[0], white[1])];
+            if (table == null)
+                return NOT_FOUND;
+            ordered[0] = blackKing ^ 56;
+            ordered[1] = whiteKing ^ 56;
+            for (int i = 0; i < blackCount; i++)
+                ordered[2 + i] = blackSquares[i] ^ 56;
+            for (int i = 0; i < whiteCount; i++)
+                ordered[2 + blackCount + i] = whiteSquares[i] ^ 56;
+            blackToMove = !blackToMove;
+        }
+        return table.getValue(table.getIndex(ordered, blackToMove));
+    }
+
+    private static int insert(int[] types, int[] squares, int count, int type, int square) {
+        int i = count;
+        while (i > 0 && types[i - 1] > type) {
+            types[i] = types[i - 1];
+            squares[i] = squares[i - 1];
+            i--;
+        }
+        types[i] = type;
+        squares[i] = square;
+        return count + 1;
+    }
+}
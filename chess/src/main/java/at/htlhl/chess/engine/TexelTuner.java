@@ -0,0 +1,455 @@
+package at.htlhl.chess.engine;
+
+import at.htlhl.chess.boardlogic.Field;
+import at.htlhl.chess.boardlogic.GameState;
+import at.htlhl.chess.boardlogic.util.PieceSquareTables;
+import at.htlhl.chess.boardlogic.util.PieceUtil;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Tunes the piece square tables of {@link PieceSquareTables} and the piece values of {@link PieceUtil} on labelled positions
+ * by minimising the error between the game results and the sigmoid of the evaluations (Texel's tuning method).
+ * <p>
+ * Material and piece square values are linear in the tuned values, so every position is read into a {@link Field} only once:
+ * its pieces are kept as a compact list and the rest of the {@link PositionTablesEvaluator} evaluation as a fixed offset.
+ * Each epoch computes the gradient of all positions in parallel on the fork/join common pool and takes one Adam step.
+ * The value of the pawn is not tuned and the tables are kept free of offsets that belong into the values (see {@link #normalize()}).
+ * The positions should be quiet, since the static evaluation is used, positions in check and decided games are skipped.
+ * <p>
+ * The input has one position per line, a FEN followed by the result for white, as {@code 1-0}, {@code 1/2-1/2}, {@code 0-1}
+ * or as a number between 0 and 1, optionally in quotes or brackets. Files of {@link TrainingData} are read as well.
+ * The tuned tables and values are written as Java source to paste into {@link PieceSquareTables} and {@link PieceUtil}.
+ * <p>
+ * Run with the positions, the output file and optionally the number of epochs as arguments, e.g. {@code positions.txt tuned.java 1000}.
+ */
+public class TexelTuner {
+
+    private static final String[] PIECE_NAMES = {"PAWN", "KNIGHT", "BISHOP", "ROOK", "QUEEN", "KING"};
+    private static final int MIDDLEGAME_OFFSET = 0;
+    private static final int ENDGAME_OFFSET = 6 * 64;
+    /**
+     * The values of the pieces without the king, which is never captured
+     */
+    private static final int VALUE_OFFSET = 2 * 6 * 64;
+    static final int PARAMETER_COUNT = VALUE_OFFSET + 5;
+
+    private static final int CHUNK_SIZE = 1 << 16;
+    private static final int READ_BATCH_SIZE = 1 << 16;
+    private static final double LEARNING_RATE = 1;
+    private static final double BETA1 = 0.9;
+    private static final double BETA2 = 0.999;
+    private static final double EPSILON = 1e-8;
+
+    /**
+     * The largest array the JVM can allocate, slightly below {@link Integer#MAX_VALUE}
+     */
+    private static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
+    private static final ThreadLocal<Field> fields = ThreadLocal.withInitial(Field::new);
+    private static final ThreadLocal<PositionTablesEvaluator> evaluators = ThreadLocal.withInitial(PositionTablesEvaluator::new);
+
+    /**
+     * The pieces of all positions, see {@link #encode(byte, int)}, the ones of position i start at {@code pieceStarts[i]}
+     */
+    private short[] pieces = new short[1 << 20];
+    private int[] pieceStarts = new int[(1 << 16) + 1];
+    private byte[] phases = new byte[1 << 16];
+    private float[] results = new float[1 << 16];
+    /**
+     * The part of the evaluation that is not tuned, positive if white is better
+     */
+    private float[] offsets = new float[1 << 16];
+    private int size = 0;
+    private int pieceCount = 0;
+
+    private final double[] parameters = getInitialParameters();
+    /**
+     * The value of a pawn with the mean of its tables, which is kept as it is, as it sets the unit of all values
+     */
+    private final double pawnValue;
+    private double scaling = 1;
+
+    TexelTuner() {
+        parameters[VALUE_OFFSET] += getTableMean(0);
+        pawnValue = parameters[VALUE_OFFSET];
+        normalize();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: TexelTuner <positions> <output> [epochs]");
+            return;
+        }
+        int epochs = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+
+        var tuner = new TexelTuner();
+        long start = System.currentTimeMillis();
+        tuner.load(Path.of(args[0]));
+        System.out.println("Loaded " + tuner.size + " positions in " + (System.currentTimeMillis() - start) + " ms");
+        if (tuner.size == 0) return;
+
+        tuner.fitScaling();
+        System.out.println("Scaling " + tuner.scaling + ", error " + tuner.getError());
+        tuner.tune(epochs, Path.of(args[1]));
+    }
+
+    /**
+     * Reads the positions of the file, a batch at a time that is parsed in parallel
+     */
+    void load(Path file) throws IOException {
+        if (TrainingData.isTrainingData(file)) {
+            TrainingData.read(file, READ_BATCH_SIZE, entries -> addAll(entries.parallelStream()
+                    .map(entry -> parse(entry.fen(), entry.getWhiteScore()))));
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            List<String> batch = new ArrayList<>(READ_BATCH_SIZE);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                batch.add(line);
+                if (batch.size() == READ_BATCH_SIZE) {
+                    addAll(batch.parallelStream().map(TexelTuner::parse));
+                    batch.clear();
+                }
+            }
+            addAll(batch.parallelStream().map(TexelTuner::parse));
+        }
+    }
+
+    private void addAll(Stream<LabelledPosition> positions) {
+        positions.toList().forEach(position -> {
+            if (position != null) add(position);
+        });
+    }
+
+    /**
+     * @return the position of the line, or null if it has no valid FEN and result, the player to move is in check or the game is over
+     */
+    static LabelledPosition parse(String line) {
+        String[] tokens = line.trim().replaceAll("[\"\\[\\];]", " ").trim().split("\\s+");
+        if (tokens.length < 5) return null;
+
+        float result;
+        switch (tokens[tokens.length - 1]) {
+            case "1-0" -> result = 1;
+            case "0-1" -> result = 0;
+            case "1/2-1/2" -> result = 0.5f;
+            default -> {
+                try {
+                    result = Float.parseFloat(tokens[tokens.length - 1]);
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+            }
+        }
+        if (result < 0 || result > 1) return null;
+
+        // the half move clock and move number are optional, EPD has none
+        String fen = String.join(" ", Arrays.copyOf(tokens, 4));
+        if (tokens.length >= 7 && tokens[4].matches("\\d+") && tokens[5].matches("\\d+"))
+            fen += " " + tokens[4] + " " + tokens[5];
+        else
+            fen += " 0 1";
+        return parse(fen, result);
+    }
+
+    /**
+     * @param result the result for white, 1 for a win
+     * @return the position, or null if the FEN is invalid, the player to move is in check or the game is over
+     */
+    static LabelledPosition parse(String fen, float result) {
+        Field field = fields.get();
+        try {
+            if (field.trySetFEN(fen) == false || field.getPlayerInCheck() != null || field.getGameState() != GameState.NOT_DECIDED)
+                return null;
+        } catch (RuntimeException e) {
+            // positions without kings and the like
+            return null;
+        }
+        return LabelledPosition.of(field, evaluators.get().evaluate(field), result);
+    }
+
+    private void add(LabelledPosition position) {
+        if (size == results.length) {
+            // pieceStarts has one more element
+            int capacity = grow(size, size + 1L, MAX_ARRAY_LENGTH - 1, "positions");
+            pieceStarts = Arrays.copyOf(pieceStarts, capacity + 1);
+            phases = Arrays.copyOf(phases, capacity);
+            results = Arrays.copyOf(results, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+        }
+        if (pieceCount + position.pieces().length > pieces.length)
+            pieces = Arrays.copyOf(pieces, grow(pieces.length, (long) pieceCount + position.pieces().length, MAX_ARRAY_LENGTH, "pieces"));
+
+        System.arraycopy(position.pieces(), 0, pieces, pieceCount, position.pieces().length);
+        pieceStarts[size] = pieceCount;
+        phases[size] = position.phase();
+        results[size] = position.result();
+        offsets[size] = position.offset();
+        pieceCount += position.pieces().length;
+        size++;
+        pieceStarts[size] = pieceCount;
+    }
+
+    /**
+     * Doubles the length of an array, but not beyond the maximum
+     *
+     * @param needed the length that is needed at least
+     * @throws IllegalStateException if more than the maximum is needed
+     */
+    private static int grow(int length, long needed, int maxLength, String content) {
+        if (needed > maxLength)
+            throw new IllegalStateException("Too many " + content + " to load, at most " + maxLength + " fit into memory");
+        return (int) Math.min(Math.max(2L * length, needed), maxLength);
+    }
+
+    /**
+     * Finds the scaling of the evaluations that has the lowest error with the initial values, by golden section search
+     */
+    void fitScaling() {
+        double low = 0.1, high = 4;
+        double ratio = (Math.sqrt(5) - 1) / 2;
+        for (int i = 0; i < 40; i++) {
+            double a = high - ratio * (high - low);
+            double b = low + ratio * (high - low);
+            scaling = a;
+            double errorA = getError();
+            scaling = b;
+            double errorB = getError();
+            if (errorA < errorB) high = b;
+            else low = a;
+        }
+        scaling = (low + high) / 2;
+    }
+
+    double getError() {
+        return computeGradient(false)[PARAMETER_COUNT];
+    }
+
+    /**
+     * Runs gradient descent with Adam and writes the values after every 100 epochs and at the end
+     */
+    void tune(int epochs, Path output) throws IOException {
+        double[] mean = new double[PARAMETER_COUNT];
+        double[] variance = new double[PARAMETER_COUNT];
+        for (int epoch = 1; epoch <= epochs; epoch++) {
+            double[] gradient = computeGradient(true);
+            double meanCorrection = 1 - Math.pow(BETA1, epoch);
+            double varianceCorrection = 1 - Math.pow(BETA2, epoch);
+            for (int i = 0; i < PARAMETER_COUNT; i++) {
+                mean[i] = BETA1 * mean[i] + (1 - BETA1) * gradient[i];
+                variance[i] = BETA2 * variance[i] + (1 - BETA2) * gradient[i] * gradient[i];
+                parameters[i] -= LEARNING_RATE * (mean[i] / meanCorrection) / (Math.sqrt(variance[i] / varianceCorrection) + EPSILON);
+            }
+            normalize();
+            if (epoch % 100 == 0 || epoch == epochs) {
+                System.out.println("Epoch " + epoch + ", error " + gradient[PARAMETER_COUNT]);
+                write(output);
+            }
+        }
+    }
+
+    /**
+     * Adding the same amount to every square of both tables of a piece changes the evaluation like changing the value of the piece,
+     * so the data cannot tell them apart. The mean of the tables is moved into the value, which keeps the evaluation as it is.
+     * The king has no value and its tables count for both sides, so their mean does not change the evaluation at all.
+     * The pawn value is reset, so the tables of the pawn lose their mean instead and the values keep their unit.
+     */
+    private void normalize() {
+        for (int type = 0; type < 6; type++) {
+            double tableMean = getTableMean(type);
+            for (int square = getFirstSquare(type); square < getEndSquare(type); square++) {
+                parameters[MIDDLEGAME_OFFSET + type * 64 + square] -= tableMean;
+                parameters[ENDGAME_OFFSET + type * 64 + square] -= tableMean;
+            }
+            if (type < 5) parameters[VALUE_OFFSET + type] += tableMean;
+        }
+        parameters[VALUE_OFFSET] = pawnValue;
+    }
+
+    /**
+     * @return the mean of the middlegame and endgame table of the piece on the squares it can stand on
+     */
+    private double getTableMean(int type) {
+        double sum = 0;
+        for (int square = getFirstSquare(type); square < getEndSquare(type); square++)
+            sum += parameters[MIDDLEGAME_OFFSET + type * 64 + square] + parameters[ENDGAME_OFFSET + type * 64 + square];
+        return sum / (2 * (getEndSquare(type) - getFirstSquare(type)));
+    }
+
+    /**
+     * Pawns never stand on the first or the last rank
+     */
+    private static int getFirstSquare(int type) {
+        return type == 0 ? 8 : 0;
+    }
+
+    private static int getEndSquare(int type) {
+        return type == 0 ? 56 : 64;
+    }
+
+    /**
+     * @param withGradient false to only compute the error
+     * @return the gradient of the mean squared error by every parameter, followed by the error itself
+     */
+    private double[] computeGradient(boolean withGradient) {
+        int chunks = (size + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        double[] sum = IntStream.range(0, chunks).parallel()
+                .mapToObj(chunk -> computeGradient(chunk * CHUNK_SIZE, Math.min(size, (chunk + 1) * CHUNK_SIZE), withGradient))
+                .reduce(new double[PARAMETER_COUNT + 1], (a, b) -> {
+                    double[] result = new double[PARAMETER_COUNT + 1];
+                    for (int i = 0; i < result.length; i++) result[i] = a[i] + b[i];
+                    return result;
+                });
+        for (int i = 0; i < sum.length; i++) sum[i] /= size;
+        return sum;
+    }
+
+    private double[] computeGradient(int from, int to, boolean withGradient) {
+        double[] gradient = new double[PARAMETER_COUNT + 1];
+        double factor = scaling * Math.log(10) / 400;
+        for (int position = from; position < to; position++) {
+            int phase = phases[position];
+            double middlegameWeight = phase / (double) PositionTables.MAX_PHASE;
+            double endgameWeight = 1 - middlegameWeight;
+
+            double evaluation = offsets[position];
+            for (int i = pieceStarts[position]; i < pieceStarts[position + 1]; i++) {
+                int piece = pieces[i];
+                int sign = getSign(piece);
+                int feature = getFeature(piece);
+                evaluation += sign * (middlegameWeight * parameters[MIDDLEGAME_OFFSET + feature] + endgameWeight * parameters[ENDGAME_OFFSET + feature]);
+                if (getType(piece) < 5) evaluation += sign * parameters[VALUE_OFFSET + getType(piece)];
+            }
+
+            double sigmoid = 1 / (1 + Math.exp(-factor * evaluation));
+            double difference = sigmoid - results[position];
+            gradient[PARAMETER_COUNT] += difference * difference;
+            if (withGradient == false) continue;
+
+            double derivative = 2 * difference * sigmoid * (1 - sigmoid) * factor;
+            for (int i = pieceStarts[position]; i < pieceStarts[position + 1]; i++) {
+                int piece = pieces[i];
+                double signed = getSign(piece) * derivative;
+                int feature = getFeature(piece);
+                gradient[MIDDLEGAME_OFFSET + feature] += signed * middlegameWeight;
+                gradient[ENDGAME_OFFSET + feature] += signed * endgameWeight;
+                if (getType(piece) < 5) gradient[VALUE_OFFSET + getType(piece)] += signed;
+            }
+        }
+        return gradient;
+    }
+
+    /**
+     * Writes the tables in the layout of {@link PieceSquareTables} and the values as the constants of {@link PieceUtil}
+     */
+    void write(Path output) throws IOException {
+        try (var writer = new PrintWriter(Files.newBufferedWriter(output))) {
+            writer.println("// " + size + " positions, error " + getError());
+            writeTables(writer, "middlegameTables", MIDDLEGAME_OFFSET);
+            writer.println();
+            writeTables(writer, "endgameTables", ENDGAME_OFFSET);
+            writer.println();
+            for (int type = 4; type >= 0; type--)
+                writer.printf("    public static final int RELATIVE_%s_VALUE = %d;%n", PIECE_NAMES[type], Math.round(parameters[VALUE_OFFSET + type]));
+            writer.println();
+            writer.print("    // in pawns:");
+            for (int type = 4; type >= 1; type--)
+                writer.printf(Locale.ROOT, " %s %.2f", PIECE_NAMES[type], parameters[VALUE_OFFSET + type] / pawnValue);
+            writer.println();
+        }
+    }
+
+    private void writeTables(PrintWriter writer, String name, int offset) {
+        writer.println("    public static final int[][] " + name + " = {");
+        for (int type = 0; type < 6; type++) {
+            writer.println("            // " + PIECE_NAMES[type]);
+            writer.println("            {");
+            for (int rank = 0; rank < 8; rank++) {
+                var row = new StringBuilder("                    ");
+                for (int file = 0; file < 8; file++) {
+                    String value = String.valueOf(Math.round(parameters[offset + type * 64 + rank * 8 + file]));
+                    row.append(value).append(rank == 7 && file == 7 ? "" : ",");
+                    if (file < 7) row.append(" ".repeat(Math.max(1, 4 - value.length())));
+                }
+                writer.println(row);
+            }
+            writer.println(type == 5 ? "            }" : "            },");
+        }
+        writer.println("    };");
+    }
+
+    private static double[] getInitialParameters() {
+        double[] parameters = new double[PARAMETER_COUNT];
+        for (int type = 0; type < 6; type++) {
+            for (int square = 0; square < 64; square++) {
+                parameters[MIDDLEGAME_OFFSET + type * 64 + square] = PieceSquareTables.middlegameTables[type][square];
+                parameters[ENDGAME_OFFSET + type * 64 + square] = PieceSquareTables.endgameTables[type][square];
+            }
+        }
+        parameters[VALUE_OFFSET] = PieceUtil.RELATIVE_PAWN_VALUE;
+        parameters[VALUE_OFFSET + 1] = PieceUtil.RELATIVE_KNIGHT_VALUE;
+        parameters[VALUE_OFFSET + 2] = PieceUtil.RELATIVE_BISHOP_VALUE;
+        parameters[VALUE_OFFSET + 3] = PieceUtil.RELATIVE_ROOK_VALUE;
+        parameters[VALUE_OFFSET + 4] = PieceUtil.RELATIVE_QUEEN_VALUE;
+        return parameters;
+    }
+
+    /**
+     * Packs a piece into the color bit, 3 bits of the type and 6 bits of the square in the tables, which are mirrored for black
+     */
+    static short encode(byte piece, int square) {
+        boolean black = PieceUtil.isBlack(piece);
+        int tableSquare = black ? (7 - square / 8) * 8 + square % 8 : square;
+        return (short) ((black ? 1 << 9 : 0) | PieceUtil.getTypeIndex(piece) << 6 | tableSquare);
+    }
+
+    private static int getSign(int piece) {
+        return (piece & 1 << 9) != 0 ? -1 : 1;
+    }
+
+    private static int getType(int piece) {
+        return piece >>> 6 & 7;
+    }
+
+    /**
+     * @return the index of the piece on its square in one of the tables
+     */
+    private static int getFeature(int piece) {
+        return piece & 0x1FF;
+    }
+
+    /**
+     * A parsed position
+     *
+     * @param pieces the encoded pieces, see {@link #encode(byte, int)}
+     * @param offset the evaluation without material and piece square values
+     * @param result the result for white, 1 for a win
+     */
+    record LabelledPosition(short[] pieces, byte phase, float offset, float result) {
+
+        static LabelledPosition of(Field field, int evaluation, float result) {
+            byte[] board = field.getBoard();
+            short[] pieces = new short[64];
+            int count = 0;
+            for (int square = 0; square < 64; square++)
+                if (PieceUtil.isEmpty(board[square]) == false)
+                    pieces[count++] = encode(board[square], square);
+            int phase = Math.min(field.getPhase(), PositionTables.MAX_PHASE);
+            int tuned = field.getPieceEvaluation()
+                    + PositionTables.taper(field.getMiddlegamePositionalEvaluation(), field.getEndgamePositionalEvaluation(), phase);
+            return new LabelledPosition(Arrays.copyOf(pieces, count), (byte) phase, evaluation - tuned, result);
+        }
+    }
+}
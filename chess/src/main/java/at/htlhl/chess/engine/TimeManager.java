@@ -0,0 +1,171 @@
+package at.htlhl.chess.engine;
+
+import at.htlhl.chess.boardlogic.Move;
+
+/**
+ * Decides how long the {@link Engine} thinks about a move.
+ * The soft limit is checked between iterations: no new iteration is started after it, and it shrinks while the best move
+ * stays the same and grows when the score drops. The hard limit aborts a running iteration.
+ * The search only asks {@link #isHardLimitReached()} every {@link #NODE_CHECK_INTERVAL} nodes, to keep clock reads out of the hot path.
+ */
+public class TimeManager {
+
+    /**
+     * The number of nodes between two clock and stop flag checks, must be a power of two.
+     * A node takes tens of microseconds, so a stop takes effect within about a millisecond.
+     */
+    public static final int NODE_CHECK_INTERVAL = 32;
+
+    /**
+     * Assumed number of moves left in the game if the clock does not say
+     */
+    private static final int DEFAULT_MOVES_TO_GO = 30;
+
+    /**
+     * Time kept in reserve for the overhead of playing the move
+     */
+    private static final long MOVE_OVERHEAD = 50_000_000L;
+
+    /**
+     * A score drop of at least this many centipawns against the last iteration extends the thinking time
+     */
+    private static final int SCORE_DROP_THRESHOLD = 30;
+
+    /**
+     * Scales the soft limit by the number of iterations the best move stayed the same
+     */
+    private static final double[] STABILITY_FACTORS = {1.6, 1.2, 1.0, 0.8, 0.6};
+
+    private final long softLimit;
+    private final long hardLimit;
+    private final boolean adaptive;
+
+    /**
+     * true while the engine thinks on the opponents time, there are no limits until {@link #ponderHit()}.
+     * Both are written by the thread that controls the search, so they are volatile.
+     */
+    private volatile boolean pondering = false;
+    private volatile long startTime;
+    private Move lastBestMove;
+    private int lastScore;
+    private int stableIterations;
+    private double scoreFactor;
+
+    private TimeManager(long softLimit, long hardLimit, boolean adaptive) {
+        this.softLimit = softLimit;
+        this.hardLimit = hardLimit;
+        this.adaptive = adaptive;
+        start();
+    }
+
+    /**
+     * Thinks exactly the given time (unless the search finishes earlier), without adapting to the search
+     */
+    public static TimeManager forMoveTime(long moveTimeNS) {
+        return new TimeManager(moveTimeNS, moveTimeNS, false);
+    }
+
+    /**
+     * Never stops the search, it runs until it is stopped from outside
+     */
+    public static TimeManager forInfinite() {
+        return new TimeManager(Long.MAX_VALUE, Long.MAX_VALUE, false);
+    }
+
+    /**
+     * Thinks without limits until {@link #ponderHit()} is called, then like {@link #forMoveTime(long)} from that moment on
+     */
+    public static TimeManager forPonder(long moveTimeNS) {
+        var timeManager = new TimeManager(moveTimeNS, moveTimeNS, false);
+        timeManager.pondering = true;
+        return timeManager;
+    }
+
+    /**
+     * Called from any thread when the opponent played the move the engine is pondering on.
+     * The search continues and the limits count from now on.
+     */
+    public void ponderHit() {
+        startTime = System.nanoTime();
+        pondering = false;
+    }
+
+    public boolean isPondering() {
+        return pondering;
+    }
+
+    /**
+     * Splits the remaining clock time over the remaining moves
+     *
+     * @param remainingNS the time left on the clock of the player to move
+     * @param incrementNS the time added to the clock after every move
+     * @param movesToGo   the number of moves until the next time control, 0 if unknown
+     */
+    public static TimeManager forClock(long remainingNS, long incrementNS, int movesToGo) {
+        long available = Math.max(remainingNS - MOVE_OVERHEAD, 1_000_000L);
+        int moves = movesToGo > 0 ? Math.min(movesToGo, DEFAULT_MOVES_TO_GO) : DEFAULT_MOVES_TO_GO;
+        long soft = Math.min(available / moves + incrementNS * 3 / 4, available / 2);
+        long hard = Math.min(soft * 4, available * 3 / 4);
+        return new TimeManager(soft, Math.max(hard, soft), true);
+    }
+
+    /**
+     * Starts the clock of the search and resets what was learned about the previous one
+     */
+    public void start() {
+        startTime = System.nanoTime();
+        lastBestMove = null;
+        stableIterations = 0;
+        scoreFactor = 1;
+    }
+
+    /**
+     * Called after every completed iteration, decides whether the next one is worth starting
+     *
+     * @param bestMove the best move of the iteration
+     * @param score    the score of the best move, positive if the player to move is better
+     * @return true if there is enough time left for another iteration
+     */
+    public boolean shouldStartIteration(Move bestMove, int score) {
+        if (pondering)
+            return true;
+        long elapsed = getElapsedTime();
+        if (adaptive == false)
+            return elapsed < softLimit;
+
+        if (bestMove.equals(lastBestMove))
+            stableIterations = Math.min(stableIterations + 1, STABILITY_FACTORS.length - 1);
+        else
+            stableIterations = 0;
+        // extend the time while the score keeps dropping, the position may be more difficult than it looked
+        if (lastBestMove != null && (long) lastScore - score >= SCORE_DROP_THRESHOLD)
+            scoreFactor = Math.min(scoreFactor * 1.5, 2.5);
+        else
+            scoreFactor = Math.max(scoreFactor * 0.9, 1);
+        lastBestMove = bestMove;
+        lastScore = score;
+
+        double limit = softLimit * STABILITY_FACTORS[stableIterations] * scoreFactor;
+        // an iteration takes several times as long as the previous one, do not start one that cannot finish
+        return elapsed < Math.min(limit, hardLimit) * 0.6;
+    }
+
+    /**
+     * @return true if the search has to stop immediately
+     */
+    public boolean isHardLimitReached() {
+        return pondering == false && getElapsedTime() >= hardLimit;
+    }
+
+    public long getElapsedTime() {
+        return System.nanoTime() - startTime;
+    }
+
+    public long getSoftLimit() {
+        return softLimit;
+    }
+
+    public long getHardLimit() {
+        return hardLimit;
+    }
+}
@@ -0,0 +1,179 @@
+package at.htlhl.chess.engine;
+
+import at.htlhl.chess.boardlogic.Field;
+import at.htlhl.chess.boardlogic.Square;
+import at.htlhl.chess.boardlogic.util.FENParser;
+import at.htlhl.chess.boardlogic.util.PieceUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * The file format of labelled positions written by {@link SelfPlayGenerator} and read by {@link TexelTuner}.
+ * <p>
+ * A header of {@value #HEADER_SIZE} bytes (magic and version) is followed by records of {@value #RECORD_SIZE} bytes, big endian:
+ * <ul>
+ *     <li>the occupied squares as a long, bit n is board index n</li>
+ *     <li>the pieces of the occupied squares in board index order, 4 bits each as the index in {@link #PIECES}, in 16 bytes</li>
+ *     <li>the castling information (see {@link at.htlhl.chess.boardlogic.util.CastlingUtil}), with bit 4 set if black is to move</li>
+ *     <li>the board index of the possible en passant square, or -1</li>
+ *     <li>the half move clock, capped at 255, and the number of the next move as a short</li>
+ *     <li>the score of the search as a short, positive if white is better</li>
+ *     <li>the result of the game: 0 if black won, 1 for a draw, 2 if white won</li>
+ * </ul>
+ */
+public final class TrainingData {
+
+    private TrainingData() {
+    }
+
+    static final int MAGIC = 0x54524E44;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_SIZE = 32;
+
+    public static final int BLACK_WIN = 0;
+    public static final int DRAW = 1;
+    public static final int WHITE_WIN = 2;
+
+    private static final byte[] PIECES = {
+            PieceUtil.EMPTY,
+            PieceUtil.WHITE_PAWN, PieceUtil.WHITE_KNIGHT, PieceUtil.WHITE_BISHOP, PieceUtil.WHITE_ROOK, PieceUtil.WHITE_QUEEN, PieceUtil.WHITE_KING,
+            PieceUtil.BLACK_PAWN, PieceUtil.BLACK_KNIGHT, PieceUtil.BLACK_BISHOP, PieceUtil.BLACK_ROOK, PieceUtil.BLACK_QUEEN, PieceUtil.BLACK_KING
+    };
+
+    /**
+     * A decoded record
+     *
+     * @param score  the score of the search, positive if white is better
+     * @param result {@link #BLACK_WIN}, {@link #DRAW} or {@link #WHITE_WIN}
+     */
+    public record Entry(String fen, int score, int result) {
+
+        /**
+         * @return the result for white as 0, 0.5 or 1
+         */
+        public float getWhiteScore() {
+            return result / 2f;
+        }
+    }
+
+    static ByteBuffer createHeader() {
+        return ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.BIG_ENDIAN)
+                .putInt(MAGIC).putInt(VERSION).putInt(RECORD_SIZE).putInt(0).flip();
+    }
+
+    /**
+     * Puts the record of the position into the buffer, the result is left at 0 and set with {@link #setResult(ByteBuffer, int, int)}
+     *
+     * @param score the score of the search, positive if white is better, clamped to the range of a short
+     * @return false if the position has more than 32 pieces and nothing was put
+     */
+    static boolean encode(Field field, int score, ByteBuffer buffer) {
+        if (field.getPieceCount() > 32) return false;
+        byte[] board = field.getBoard();
+        long occupied = 0;
+        byte[] pieces = new byte[16];
+        int count = 0;
+        for (int square = 0; square < 64; square++) {
+            if (PieceUtil.isEmpty(board[square])) continue;
+            occupied |= 1L << square;
+            pieces[count / 2] |= (byte) (getPieceIndex(board[square]) << (count % 2 == 0 ? 4 : 0));
+            count++;
+        }
+        Square enPassantSquare = field.getPossibleEnPassantSquare();
+        buffer.putLong(occupied)
+                .put(pieces)
+                .put((byte) (field.getCastlingInformation() | (field.isBlackTurn() ? 0x10 : 0)))
+                .put((byte) (enPassantSquare == null ? -1 : enPassantSquare.getBoardIndex()))
+                .put((byte) Math.min(field.getPlayedHalfMovesSinceLastPawnMoveOrCapture(), 255))
+                .putShort((short) Math.min(field.getNumberOfNextMove(), Short.MAX_VALUE))
+                .putShort((short) Math.max(Short.MIN_VALUE, Math.min(score, Short.MAX_VALUE)))
+                .put((byte) 0);
+        return true;
+    }
+
+    /**
+     * Sets the result of the record starting at the given position of the buffer
+     */
+    static void setResult(ByteBuffer buffer, int recordStart, int result) {
+        buffer.put(recordStart + RECORD_SIZE - 1, (byte) result);
+    }
+
+    /**
+     * Reads the record at the position of the buffer and advances it
+     */
+    static Entry decode(ByteBuffer buffer) {
+        long occupied = buffer.getLong();
+        byte[] pieces = new byte[16];
+        buffer.get(pieces);
+        byte[] board = new byte[64];
+        int count = 0;
+        for (long squares = occupied; squares != 0; squares &= squares - 1) {
+            int nibble = pieces[count / 2] >> (count % 2 == 0 ? 4 : 0) & 0xF;
+            board[Long.numberOfTrailingZeros(squares)] = PIECES[nibble];
+            count++;
+        }
+        byte flags = buffer.get();
+        byte enPassantSquare = buffer.get();
+        int halfMoves = buffer.get() & 0xFF;
+        int moveNumber = buffer.getShort();
+        int score = buffer.getShort();
+        int result = buffer.get();
+        String fen = FENParser.exportToFEN(board, (flags & 0x10) != 0, (byte) (flags & 0xF),
+                enPassantSquare < 0 ? null : Square.parseBoardIndex(enPassantSquare), halfMoves, moveNumber);
+        return new Entry(fen, score, result);
+    }
+
+    /**
+     * @return whether the file starts with the header of this format
+     */
+    static boolean isTrainingData(Path file) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            var header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.BIG_ENDIAN);
+            channel.read(header, 0);
+            header.flip();
+            return header.remaining() == HEADER_SIZE && header.getInt() == MAGIC;
+        }
+    }
+
+    /**
+     * Reads all records of the file and passes them on in batches of at most the given size
+     *
+     * @throws IOException if the file cannot be read or is not of this format and version
+     */
+    static void read(Path file, int batchSize, Consumer<List<Entry>> consumer) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            var header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.BIG_ENDIAN);
+            channel.read(header, 0);
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC || header.getInt() != VERSION)
+                throw new IOException(file + " is not training data of version " + VERSION);
+
+            var buffer = ByteBuffer.allocate(batchSize * RECORD_SIZE).order(ByteOrder.BIG_ENDIAN);
+            channel.position(HEADER_SIZE);
+            while (channel.read(buffer) > 0 || buffer.position() > 0) {
+                buffer.flip();
+                List<Entry> entries = new ArrayList<>(batchSize);
+                while (buffer.remaining() >= RECORD_SIZE)
+                    entries.add(decode(buffer));
+                buffer.compact();
+                if (entries.isEmpty()) break;
+                consumer.accept(entries);
+            }
+        }
+    }
+
+    private static int getPieceIndex(byte piece) {
+        for (int i = 1; i < PIECES.length; i++)
+            if (PIECES[i] == piece) return i;
+        throw new IllegalArgumentException("Not a piece: " + piece);
+    }
+}
@@ -5,13 +5,20 @@ import at.htlhl.chess.boardlogic.Player;
 import at.htlhl.chess.gui.BoardViewController;
 import at.htlhl.chess.gui.util.CustomEngineConnector;
 
+import java.util.List;
+
 public class BotEntity extends PlayingEntity {
 
+    /**
+     * The engine session of this bot, kept for the whole game
+     */
     CustomEngineConnector connector;
 
     public BotEntity(Player player, BoardViewController boardViewController) {
         super(player, boardViewController);
         connector = new CustomEngineConnector(boardViewController.getField());
+        connector.useOpeningBook();
+        connector.useTablebases();
     }
 
     @Override
@@ -28,8 +35,9 @@ public class BotEntity extends PlayingEntity {
     }
 
     private void startEngine() {
-        connector.renewExecutions();
-        connector = new CustomEngineConnector(boardViewController.getField());
+        // keep the search that already runs on the opponents move if the opponent played the expected reply
+        if (connector.ponderHit(this::suggestMove))
+            return;
         connector.suggestMove(this::suggestMove);
     }
 
@@ -39,7 +47,16 @@ public class BotEntity extends PlayingEntity {
     private void suggestMove(Move move) {
         if (move == null) return;
         // move is best move here
-        move(move);
+        if (move(move) == false) return;
+        List<Move> principalVariation = connector.getEngine().getPrincipalVariation();
+        if (principalVariation.size() >= 2)
+            connector.startPondering(principalVariation.get(1));
+    }
+
+    @Override
+    public void cancelThinking() {
+        super.cancelThinking();
+        connector.cancel();
     }
 
     @Override
@@ -31,6 +31,12 @@ public abstract class PlayingEntity {
     public void allowMove() {
     }
 
+    /**
+     * Stops bots from thinking, because the position was changed without a move (undo, new FEN or new game)
+     */
+    public void cancelThinking() {
+    }
+
     public BoardViewController getBoardViewController() {
         return boardViewController;
     }
@@ -47,6 +47,10 @@ public class BoardViewController implements Initializable {
     private static final Color DARK_SQUARE_COLOR = Color.rgb(176, 136, 104);
     private static final Color LAST_MOVE_HIGHLIGHT_COLOR = Color.rgb(255, 255, 0, 0.4);
     private static final Color KING_CHECK_COLOR = Color.rgb(255, 0, 0);
+    /**
+     * The number of suggested moves shown as arrows, the custom engine searches them with exact scores (multi PV)
+     */
+    private static final int SUGGESTION_ARROWS = 3;
     private final Field field = new Field();
     private final BoardViewUtil boardViewUtil = new BoardViewUtil();
     private final List<Arrow> arrowsToDraw = new ArrayList<>(); // Will be reset after each move
@@ -187,6 +191,7 @@ public class BoardViewController implements Initializable {
     }
 
     private void undoMove() {
+        cancelThinking();
         field.undoMove();
         updateUI();
         updateMoveOrder();
@@ -208,12 +213,23 @@ public class BoardViewController implements Initializable {
     }
 
     private void newGame() {
+        cancelThinking();
         removeSquareListeners();
+        if (connector != null) {
+            // the engine session belongs to the game
+            connector.shutdown();
+            connector = null;
+        }
         field.resetBoard();
         initPlayers();
         updateUI();
     }
 
+    private void cancelThinking() {
+        blackPlayingEntity.cancelThinking();
+        whitePlayingEntity.cancelThinking();
+    }
+
     private void removeSquareListeners() {
         blackPlayingEntity.shutdown();
         whitePlayingEntity.shutdown();
@@ -552,6 +568,7 @@ public class BoardViewController implements Initializable {
      * Sets the chess board based on the FEN string in the text area. Alerts if the FEN is invalid.
      */
     private void setBoardByFEN() {
+        cancelThinking();
         if (!field.trySetFEN(FENTextArea.getText())) {
             boardViewUtil.alertProblem("Invalid FEN!", "Check if your input is correct");
         }
@@ -621,14 +638,26 @@ public class BoardViewController implements Initializable {
 
     private void updateSuggestions() {
         moveSuggestionsVBox.getChildren().clear();
-        if (connector != null) connector.shutdown();
         clearArrows();
+        // the custom engine keeps its session for the whole game, a new suggestion request cancels the previous one
+        boolean keepConnector = engineToggleSwitch.isSelected()
+                && engineForSuggChoiceBox.getValue() == EngineConnector.Type.CUSTOM && connector instanceof CustomEngineConnector;
+        if (keepConnector == false && connector != null) {
+            connector.shutdown();
+            connector = null;
+        }
         if (engineToggleSwitch.isSelected() == false) return;
+        if (connector != null) {
+            connector.suggestMoves(this::fillMoveSuggestions);
+            return;
+        }
 
         // run engine in background and then coll fillMoveSuggestions
         switch (engineForSuggChoiceBox.getValue()) {
             case EngineConnector.Type.CUSTOM:
-                connector = new CustomEngineConnector(getField());
+                var customEngineConnector = new CustomEngineConnector(getField());
+                customEngineConnector.getEngine().setMultiPV(SUGGESTION_ARROWS);
+                connector = customEngineConnector;
                 break;
             case EngineConnector.Type.STOCKFISH:
                 connector = new StockfishConnector(this);
@@ -639,12 +668,17 @@ public class BoardViewController implements Initializable {
         connector.suggestMoves(this::fillMoveSuggestions);
     }
 
+    /**
+     * Shows the suggested moves, replacing the ones shown before. Called again whenever the engine has better results.
+     */
     private void fillMoveSuggestions(List<EvaluatedMove> moves) {
         if (moves == null) return;
+        moveSuggestionsVBox.getChildren().clear();
+        clearArrows();
         double i = 0;
         for (EvaluatedMove move : moves) {
             if (move == null) continue;
-            if (i < 3) {
+            if (i < SUGGESTION_ARROWS) {
                 addArrow(move.move(), (1.7 - (i * 0.5)));
                 i++;
             }
@@ -4,8 +4,15 @@ import at.htlhl.chess.boardlogic.Field;
 import at.htlhl.chess.boardlogic.Move;
 import at.htlhl.chess.engine.Engine;
 import at.htlhl.chess.engine.EvaluatedMove;
+import at.htlhl.chess.engine.MoveOrderer;
+import at.htlhl.chess.engine.PolyglotBook;
+import at.htlhl.chess.engine.Tablebases;
+import at.htlhl.chess.engine.TimeManager;
+import at.htlhl.chess.gui.ChessApplication;
 import javafx.application.Platform;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
@@ -14,29 +21,232 @@ import java.util.function.Consumer;
 
 public class CustomEngineConnector extends EngineConnector {
 
+    /**
+     * The opening book from the settings opening_book_path and polyglot_random64_path, loaded once and shared by all engines.
+     * null if it is not configured or could not be loaded.
+     */
+    private static PolyglotBook openingBook;
+    private static boolean openingBookLoaded = false;
+    /**
+     * The endgame tables from the directory of the setting tablebase_path, loaded once and shared by all engines.
+     * null if it is not configured or could not be loaded.
+     */
+    private static Tablebases tablebases;
+    private static boolean tablebasesLoaded = false;
+
+    /**
+     * The field of the game, the engine searches a copy of it taken when the search is requested
+     */
+    private final Field field;
     private final Engine engine;
     private ExecutorService executor = Executors.newSingleThreadExecutor();
+    /**
+     * Increased whenever the running search is cancelled, so that its result is not delivered
+     */
+    private volatile int searchGeneration = 0;
 
+    /**
+     * The expected reply of the opponent the engine is pondering on, null if it is not pondering.
+     * The ponder state is only accessed from the FX thread.
+     */
+    private Move ponderMove;
+    /**
+     * The Zobrist key of the position after the expected reply, a ponder hit needs the game to be in exactly this position
+     */
+    private long ponderKey;
+    private TimeManager ponderTimeManager;
+    /**
+     * The callback to deliver the ponder result to, set on a ponder hit
+     */
+    private Consumer<Move> ponderCallback;
+    /**
+     * The result of a ponder search that finished before the ponder hit
+     */
+    private Move ponderResult;
+
+    /**
+     * Keeps one engine and its thread for the whole game. Every search continues from the state the previous one left,
+     * the moves played in between are passed to the engine one by one (see {@link Engine#updateField(Field)}).
+     *
+     * @param field the field of the game, must only be changed on the FX thread
+     */
     public CustomEngineConnector(Field field) {
+        this.field = field;
         engine = new Engine(field);
     }
 
+    /**
+     * Searches the current position of the game, a search that is still running is cancelled. Must be called from the FX thread.
+     */
     public void suggestMove(Consumer<Move> moveCallback) {
         moveCallback.accept(null);
+        int generation = cancel();
+        Field position = field.clone();
         executor.submit(() -> {
+            // cleared before the generation is checked, a cancel in between either skips the search or stops it
+            engine.clearStop();
+            if (generation != searchGeneration) return;
+            engine.updateField(position);
             Move bestMove = engine.getBestMove();
-            Platform.runLater(() -> moveCallback.accept(bestMove));
+            if (generation == searchGeneration)
+                Platform.runLater(() -> moveCallback.accept(bestMove));
         });
     }
 
+    /**
+     * Searches the current position of the game, a search that is still running is cancelled. Must be called from the FX thread.
+     * The callback gets the moves of every completed iteration, the last call has the final result.
+     */
     public void suggestMoves(Consumer<List<EvaluatedMove>> movesCallback){
         movesCallback.accept(null);
+        int generation = cancel();
+        Field position = field.clone();
         executor.submit(() -> {
+            engine.clearStop();
+            if (generation != searchGeneration) return;
+            engine.updateField(position);
+            // checked again on the FX thread, a new search may have been requested while the result was queued
+            engine.setSearchListener(info -> Platform.runLater(() -> {
+                if (generation == searchGeneration) movesCallback.accept(info.moves());
+            }));
             ArrayList<EvaluatedMove> bestMove = engine.getBestMoves();
-            Platform.runLater(() -> movesCallback.accept(bestMove));
+            engine.setSearchListener(null);
+            Platform.runLater(() -> {
+                if (generation == searchGeneration) movesCallback.accept(bestMove);
+            });
         });
     }
 
+    /**
+     * Stops the running search (including pondering) without delivering its result, the engine and its thread are kept.
+     * Has to be called when the position is changed without a move, e.g. by an undo or a new FEN. Must be called from the FX thread.
+     *
+     * @return the generation of the next search
+     */
+    public int cancel() {
+        int generation = ++searchGeneration;
+        engine.stop();
+        ponderMove = null;
+        ponderCallback = null;
+        ponderResult = null;
+        return generation;
+    }
+
+    /**
+     * Starts thinking on the opponents time, in the position after the expected reply.
+     * Must be called from the FX thread, after the engines last search delivered its move and the move was played.
+     *
+     * @param expectedReply the move the opponent is expected to play, usually the second move of the principal variation
+     */
+    public void startPondering(Move expectedReply) {
+        Field position = field.clone();
+        Field ponderField = field.clone();
+        Move reply = ponderField.getLegalMoves().stream()
+                .filter(move -> MoveOrderer.encode(move) == MoveOrderer.encode(expectedReply))
+                .findFirst().orElse(null);
+        if (reply == null) return;
+        ponderField.forceMove(reply, false);
+        // the reply ends the game, there is nothing to ponder on
+        if (ponderField.getLegalMoves().isEmpty()) return;
+
+        ponderMove = reply;
+        ponderKey = ponderField.getZobristKey();
+        ponderTimeManager = TimeManager.forPonder(Engine.DEFAULT_THINKING_TIME);
+        ponderCallback = null;
+        ponderResult = null;
+        int generation = searchGeneration;
+        TimeManager timeManager = ponderTimeManager;
+        executor.submit(() -> {
+            engine.clearStop();
+            if (generation != searchGeneration) return;
+            // two steps, so both moves are played on the field of the engine
+            engine.updateField(position);
+            engine.updateField(ponderField);
+            Move bestMove = engine.getBestMoves(timeManager).getFirst().move();
+            if (generation == searchGeneration)
+                Platform.runLater(() -> onPonderFinished(bestMove));
+        });
+    }
+
+    private void onPonderFinished(Move bestMove) {
+        if (ponderCallback != null) {
+            var callback = ponderCallback;
+            ponderMove = null;
+            ponderCallback = null;
+            callback.accept(bestMove);
+        } else {
+            ponderResult = bestMove;
+        }
+    }
+
+    /**
+     * Checks if the engine is pondering on the current position of the game, i.e. the opponent played the expected reply.
+     * If so, the running search continues with the normal time limit and its result is delivered to the callback.
+     * Otherwise the caller has to start a new search, which cancels the ponder search. Must be called from the FX thread.
+     *
+     * @return true on a ponder hit
+     */
+    public boolean ponderHit(Consumer<Move> moveCallback) {
+        if (ponderMove == null) return false;
+        // compared by position, the same move in another position (after an undo or a new FEN) is no hit
+        if (field.getZobristKey() != ponderKey) {
+            ponderMove = null;
+            ponderResult = null;
+            return false;
+        }
+        ponderTimeManager.ponderHit();
+        if (ponderResult != null) {
+            ponderMove = null;
+            moveCallback.accept(ponderResult);
+        } else {
+            ponderCallback = moveCallback;
+        }
+        return true;
+    }
+
+    /**
+     * Lets the engine play the moves of the opening book from the settings without searching, if one is configured
+     */
+    public void useOpeningBook() {
+        engine.setOpeningBook(getOpeningBook(), true);
+    }
+
+    private static synchronized PolyglotBook getOpeningBook() {
+        if (openingBookLoaded) return openingBook;
+        openingBookLoaded = true;
+        String bookPath = ChessApplication.prop.getProperty("opening_book_path");
+        String random64Path = ChessApplication.prop.getProperty("polyglot_random64_path");
+        if (bookPath == null || bookPath.isBlank() || random64Path == null || random64Path.isBlank())
+            return null;
+        try {
+            openingBook = PolyglotBook.open(Path.of(bookPath), Path.of(random64Path));
+        } catch (IOException e) {
+            System.err.println("Opening book could not be loaded: " + e.getMessage());
+        }
+        return openingBook;
+    }
+
+    /**
+     * Lets the engine look up endgames in the tablebases from the settings, if they are configured
+     */
+    public void useTablebases() {
+        engine.setTablebases(getTablebases());
+    }
+
+    private static synchronized Tablebases getTablebases() {
+        if (tablebasesLoaded) return tablebases;
+        tablebasesLoaded = true;
+        String tablebasePath = ChessApplication.prop.getProperty("tablebase_path");
+        if (tablebasePath == null || tablebasePath.isBlank())
+            return null;
+        try {
+            tablebases = Tablebases.open(Path.of(tablebasePath));
+        } catch (IOException e) {
+            System.err.println("Tablebases could not be loaded: " + e.getMessage());
+        }
+        return tablebases;
+    }
+
     public void renewExecutions() {
         shutdown();
         executor = Executors.newSingleThreadExecutor();
@@ -46,6 +256,8 @@ public class CustomEngineConnector extends EngineConnector {
      * Shuts down the Engine. Use this right before the {@link CustomEngineConnector} goes out of scope (fuck java for not having destructors)
      */
     public void shutdown() {
+        cancel();
+        // shutdownNow also drops searches that did not start yet
         if (executor != null)
             executor.shutdownNow();
         executor = null;
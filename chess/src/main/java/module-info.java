@@ -11,6 +11,8 @@ module at.htlhl.chess {
     requires eu.hansolo.tilesfx;
     requires com.almasb.fxgl.all;
     requires javafx.swing;
+    requires jdk.incubator.vector;
+    requires jdk.jfr;
 
     exports at.htlhl.chess.boardlogic.util;
     opens at.htlhl.chess.boardlogic.util to javafx.fxml;
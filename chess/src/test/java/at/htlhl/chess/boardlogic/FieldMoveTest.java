@@ -288,6 +288,52 @@ public class FieldMoveTest {
         assertEquals(PieceUtil.EMPTY, field.getPieceBySquare(start), "Starting square should be empty");
     }
 
+    @Test
+    public void testMoveAlongLineOfSlidingPiece() {
+        // the king moves away from the queen on the b-file, the queen must not see past it
+        field.trySetFEN("8/8/8/1k6/8/8/1K6/1Q6 w - - 0 1");
+
+        assertTrue(field.move(new Move(Square.parseString("b2"), Square.parseString("b3"))));
+
+        var fresh = new Field();
+        fresh.trySetFEN(field.getFEN());
+        assertArrayEquals(fresh.getWhiteAttackSquares(), field.getWhiteAttackSquares(), "Attack squares should match a fresh field");
+        assertFalse(field.getLegalMoves().stream().anyMatch(move -> move.getTargetSquare().equals(Square.parseString("b4"))),
+                "King must not move next to the other king");
+    }
+
+    @Test
+    public void testAttackSquaresAfterPromotion() {
+        // the pawn's attacks have to be removed, not the ones of the new queen from the pawn's square
+        field.trySetFEN("8/8/1P6/2K1k2p/8/8/7R/8 w - - 0 1");
+
+        assertTrue(field.move(new Move(Square.parseString("b6"), Square.parseString("b7"))));
+        assertTrue(field.move(new Move(Square.parseString("e5"), Square.parseString("e4"))));
+        Move promotion = new Move(Square.parseString("b7"), Square.parseString("b8"));
+        promotion.setPromotionPiece(PieceUtil.WHITE_QUEEN);
+        assertTrue(field.move(promotion));
+
+        var fresh = new Field();
+        fresh.trySetFEN(field.getFEN());
+        assertArrayEquals(fresh.getWhiteAttackSquares(), field.getWhiteAttackSquares(), "Attack squares should match a fresh field");
+        assertArrayEquals(fresh.getBlackAttackSquares(), field.getBlackAttackSquares(), "Attack squares should match a fresh field");
+        assertFalse(field.getLegalMoves().stream().anyMatch(move -> move.getTargetSquare().equals(Square.parseString("d5"))),
+                "King must not move next to the other king");
+    }
+
+    @Test
+    public void testAttackSquaresAfterCaptureOnLineOfCapturedPiece() {
+        // the captured queen saw up to the king on g4, not past it
+        field.trySetFEN("8/6P1/8/4k3/6K1/5q2/7r/8 w - - 0 10");
+
+        assertTrue(field.move(new Move(Square.parseString("g4"), Square.parseString("f3"))));
+
+        var fresh = new Field();
+        fresh.trySetFEN(field.getFEN());
+        assertArrayEquals(fresh.getWhiteAttackSquares(), field.getWhiteAttackSquares(), "Attack squares should match a fresh field");
+        assertArrayEquals(fresh.getBlackAttackSquares(), field.getBlackAttackSquares(), "Attack squares should match a fresh field");
+    }
+
     @Test
     public void testPawnPromotionToKnight() {
         field.trySetFEN("rnbqkb1r/ppppp1Pp/5n2/8/8/8/PPPPPPP1/RNBQKBNR w KQkq - 0 1");
@@ -824,6 +870,63 @@ public class FieldMoveTest {
         assertFalse(result, "Promotion must be to a piece of the same color as the pawn");
     }
 
+    @Test
+    public void testNullMoveAndUndo() {
+        field.trySetFEN("rnbqkbnr/ppp1pppp/8/8/3pP3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 3");
+        String fenBefore = field.getFEN();
+        int legalMovesBefore = field.getLegalMoves().size();
+
+        field.forceNullMove();
+
+        assertFalse(field.isBlackTurn(), "Null move should pass the turn to white");
+        assertNull(field.getPossibleEnPassantSquare(), "Null move should clear the en passant square");
+        assertEquals(PieceUtil.WHITE_PAWN, field.getPieceBySquare(Square.parseString("e4")), "Null move should not move any piece");
+        assertTrue(field.getLegalMoves().stream().allMatch(m -> PieceUtil.isWhite(field.getPieceBySquare(m.getStartingSquare()))),
+                "Legal moves after a null move should belong to white");
+
+        field.undoMove();
+
+        assertEquals(fenBefore, field.getFEN(), "Undoing a null move should restore the position");
+        assertEquals(legalMovesBefore, field.getLegalMoves().size(), "Undoing a null move should restore the legal moves");
+    }
+
+    @Test
+    public void testIncrementalPositionalEvaluation() {
+        String[] fens = {
+                "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+                "rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq f6 0 3",
+                "rnbqkb1r/ppppp1Pp/5n2/8/8/8/PPPPPPP1/RNBQKBNR w KQkq - 0 1"
+        };
+        for (String fen : fens) {
+            field.trySetFEN(fen);
+            long[] evaluationBefore = getIncrementalEvaluation(field);
+            for (Move move : new java.util.ArrayList<>(field.getLegalMoves())) {
+                field.forceMove(move, false);
+                Field expected = new Field();
+                expected.trySetFEN(field.getFEN());
+                assertArrayEquals(getIncrementalEvaluation(expected), getIncrementalEvaluation(field), "Evaluation after " + move + " in " + fen);
+                field.undoMove();
+                assertArrayEquals(evaluationBefore, getIncrementalEvaluation(field), "Evaluation after undoing " + move + " in " + fen);
+            }
+        }
+    }
+
+    // Helper method to get all incrementally updated evaluation terms and keys of a field
+    private long[] getIncrementalEvaluation(Field field) {
+        return new long[]{
+                field.getPieceEvaluation(),
+                field.getMiddlegamePositionalEvaluation(),
+                field.getEndgamePositionalEvaluation(),
+                field.getPhase(Player.WHITE),
+                field.getPhase(Player.BLACK),
+                field.getZobristKey(),
+                field.getPawnKey(),
+                field.getPawns(Player.WHITE),
+                field.getPawns(Player.BLACK),
+                field.getPieceCount()
+        };
+    }
+
     // Helper method to get all squares with pieces of the current player
     private List<Square> getAllPieceSquares(Field field, boolean isBlack) {
         List<Square> squares = new java.util.ArrayList<>();
@@ -0,0 +1,22 @@
+package at.htlhl.chess.engine;
+
+import at.htlhl.chess.boardlogic.Field;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EngineTest {
+
+    @Test
+    public void testSearchWithoutLegalMoves() {
+        for (String fen : new String[]{"7k/6Q1/6K1/8/8/8/8/8 b - - 0 1", "k7/2Q5/1K6/8/8/8/8/8 b - - 0 1"}) {
+            Field field = new Field();
+            assertTrue(field.trySetFEN(fen));
+            Engine engine = new Engine(field);
+            engine.setVerbose(false);
+            // mate and stalemate
+            assertTrue(engine.getBestMoves(SearchLimits.depth(3)).isEmpty());
+            assertNull(engine.getBestMove());
+        }
+    }
+}
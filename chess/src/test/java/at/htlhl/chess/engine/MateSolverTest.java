@@ -0,0 +1,49 @@
+package at.htlhl.chess.engine;
+
+import at.htlhl.chess.boardlogic.Field;
+import at.htlhl.chess.boardlogic.Move;
+import at.htlhl.chess.boardlogic.Square;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MateSolverTest {
+
+    /**
+     * Morphy's mate in 2, solved by 1. Ra6
+     */
+    private static final String MATE_IN_TWO = "kbK5/pp6/1P6/8/8/8/8/R7 w - - 0 1";
+
+    private final MateSolver solver = new MateSolver(1 << 16);
+
+    @Test
+    public void testFindsMateInTwo() {
+        Field field = fieldOf(MATE_IN_TWO);
+        String fen = field.getFEN();
+
+        var result = solver.solve(field, 3);
+        assertEquals(MateSolver.Status.MATE, result.status());
+        assertEquals(2, result.getMateLength());
+        assertEquals(new Move(Square.parseString("a1"), Square.parseString("a6")).toString(), result.line().getFirst().toString());
+        assertEquals(fen, field.getFEN(), "The field must not be changed");
+    }
+
+    @Test
+    public void testMateInTwoHasUniqueSolution() {
+        var matingMoves = solver.getMatingMoves(fieldOf(MATE_IN_TWO), 2);
+        assertNotNull(matingMoves);
+        assertEquals(1, matingMoves.size());
+        assertEquals(new Move(Square.parseString("a1"), Square.parseString("a6")).toString(), matingMoves.getFirst().toString());
+    }
+
+    @Test
+    public void testNoMateInOne() {
+        assertEquals(MateSolver.Status.NO_MATE, solver.solve(fieldOf(MATE_IN_TWO), 1).status());
+    }
+
+    private static Field fieldOf(String fen) {
+        Field field = new Field();
+        assertTrue(field.trySetFEN(fen));
+        return field;
+    }
+}
@@ -0,0 +1,128 @@
+package at.htlhl.chess.engine;
+
+import at.htlhl.chess.boardlogic.Field;
+import at.htlhl.chess.boardlogic.Move;
+import at.htlhl.chess.boardlogic.Square;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class PolyglotBookTest {
+
+    private static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    /**
+     * Arbitrary numbers instead of the ones of the Polyglot standard, which are not part of the repository
+     */
+    private final long[] random64 = new Random(1).longs(781).toArray();
+
+    @Test
+    public void testStartPositionKeyWithStandardNumbers() throws IOException {
+        // the Random64 numbers are configured like the setting polyglot_random64_path, e.g. -Dpolyglot.random64=random64.bin
+        String random64Path = System.getProperty("polyglot.random64");
+        assumeTrue(random64Path != null, "No Random64 file configured");
+        long[] standard = PolyglotBook.readRandom64(Path.of(random64Path));
+
+        assertEquals(0x463b96181691fc9cL, PolyglotBook.computeKey(fieldOf(START_FEN), standard));
+        assertEquals(0x823c9b50fd114196L, PolyglotBook.computeKey(fieldOf("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1"), standard));
+        assertEquals(0x22a48b5a8e47ff78L, PolyglotBook.computeKey(fieldOf("rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq f6 0 3"), standard));
+    }
+
+    @Test
+    public void testReferenceKeysOfThePolyglotStandard() {
+        // the Random64 numbers of the Polyglot standard for the squares that change, the others cancel out in the differences
+        long[] standard = new long[781];
+        standard[72] = 0x14ACBAF4777D5776L; // white pawn a2
+        standard[88] = 0x87B3E2B2B5C907B1L; // white pawn a4
+        standard[74] = 0xDABF2AC8201752FCL; // white pawn c2
+        standard[90] = 0xAE4A9346CC3F7CF2L; // white pawn c4
+        standard[76] = 0xBB6E2924F03912EAL; // white pawn e2
+        standard[92] = 0x87BF02C6B49E2AE9L; // white pawn e4
+        standard[100] = 0x1E1032911FA78984L; // white pawn e5
+        standard[79] = 0xE99D662AF4243939L; // white pawn h2
+        standard[95] = 0x8DE8DCA9F03CC54EL; // white pawn h4
+        standard[49] = 0x8C74C368081B3075L; // black pawn b7
+        standard[25] = 0x8DBD98A352AFD40BL; // black pawn b4
+        standard[18] = 0x7449BBFF801FED0BL; // black pawn c3
+        standard[51] = 0x7EF48F2B83024E20L; // black pawn d7
+        standard[35] = 0x03488B95B0F1850FL; // black pawn d5
+        standard[53] = 0x6568FCA92C76A243L; // black pawn f7
+        standard[37] = 0x09D1BC9A3DD90A94L; // black pawn f5
+        standard[448] = 0xA09E8C8C35AB96DEL; // white rook a1
+        standard[464] = 0x66C1A2A1A60CD889L; // white rook a3
+        standard[768] = 0x31D71DCE64B2C310L; // castling
+        standard[769] = 0xF165B587DF898190L;
+        standard[770] = 0xA57E6339DD2CF3A7L;
+        standard[771] = 0x1EF6E6DBB1961EC9L;
+        standard[774] = 0x003A93D8B2806962L; // en passant on the c file
+        standard[777] = 0xD0E4427A5514FB72L; // en passant on the f file
+        standard[780] = 0xF8D626AAAF278509L; // white to move
+
+        // the keys of the examples in the Polyglot book format description
+        long startKey = 0x463b96181691fc9cL;
+        long start = PolyglotBook.computeKey(fieldOf(START_FEN), standard);
+        assertKey(0x823c9b50fd114196L, startKey, start, standard, "e2e4");
+        assertKey(0x0756b94461c50fb0L, startKey, start, standard, "e2e4", "d7d5");
+        assertKey(0x662fafb965db29d4L, startKey, start, standard, "e2e4", "d7d5", "e4e5");
+        assertKey(0x22a48b5a8e47ff78L, startKey, start, standard, "e2e4", "d7d5", "e4e5", "f7f5");
+        assertKey(0x3c8123ea7b067637L, startKey, start, standard, "a2a4", "b7b5", "h2h4", "b5b4", "c2c4");
+        assertKey(0x5c3f9b829b279560L, startKey, start, standard, "a2a4", "b7b5", "h2h4", "b5b4", "c2c4", "b4c3", "a1a3");
+    }
+
+    /**
+     * Compares the difference to the start position, as only the numbers of the squares that change are known
+     */
+    private static void assertKey(long expectedKey, long startKey, long start, long[] standard, String... moves) {
+        Field field = fieldOf(START_FEN);
+        for (String move : moves)
+            assertTrue(field.move(new Move(Square.parseString(move.substring(0, 2)), Square.parseString(move.substring(2, 4)))), move);
+        assertEquals(Long.toHexString(expectedKey ^ startKey), Long.toHexString(PolyglotBook.computeKey(field, standard) ^ start),
+                "Key after " + String.join(" ", moves));
+    }
+
+    @Test
+    public void testStartPositionKeyUsesPolyglotIndices() {
+        // Polyglot orders the pieces black pawn, white pawn, black knight, white knight, ... and counts the ranks from 1
+        // white rook, knight, bishop, queen, king, bishop, knight, rook, the black piece is one index lower
+        int[] backRankKinds = {7, 3, 5, 9, 11, 5, 3, 7};
+        long expected = 0;
+        for (int file = 0; file < 8; file++) {
+            expected ^= random64[pieceIndex(backRankKinds[file], 0, file)];
+            expected ^= random64[pieceIndex(1, 1, file)];
+            expected ^= random64[pieceIndex(0, 6, file)];
+            expected ^= random64[pieceIndex(backRankKinds[file] - 1, 7, file)];
+        }
+        for (int castling = 768; castling < 772; castling++)
+            expected ^= random64[castling];
+        expected ^= random64[780];
+
+        assertEquals(expected, PolyglotBook.computeKey(fieldOf(START_FEN), random64));
+    }
+
+    @Test
+    public void testEnPassantFileOnlyCountsIfCapturePossible() {
+        long start = PolyglotBook.computeKey(fieldOf(START_FEN), random64);
+        long afterE4 = PolyglotBook.computeKey(fieldOf("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1"), random64);
+        // no black pawn can capture on e3, so only the pawn and the player to move change
+        assertEquals(start ^ random64[pieceIndex(1, 1, 4)] ^ random64[pieceIndex(1, 3, 4)] ^ random64[780], afterE4);
+
+        long withEnPassant = PolyglotBook.computeKey(fieldOf("rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq f6 0 3"), random64);
+        long withoutEnPassant = PolyglotBook.computeKey(fieldOf("rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq - 0 3"), random64);
+        assertEquals(random64[772 + 5], withEnPassant ^ withoutEnPassant);
+    }
+
+    private static int pieceIndex(int kind, int row, int file) {
+        return 64 * kind + 8 * row + file;
+    }
+
+    private static Field fieldOf(String fen) {
+        Field field = new Field();
+        assertTrue(field.trySetFEN(fen));
+        return field;
+    }
+}
@@ -0,0 +1,65 @@
+package at.htlhl.chess.engine;
+
+import at.htlhl.chess.boardlogic.Field;
+import at.htlhl.chess.boardlogic.GameState;
+import at.htlhl.chess.boardlogic.Move;
+import at.htlhl.chess.boardlogic.Square;
+import at.htlhl.chess.boardlogic.util.PieceUtil;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PositionTablesEvaluatorTest {
+
+    private final PositionTablesEvaluator evaluator = new PositionTablesEvaluator();
+
+    @Test
+    public void testEvaluationAfterPromotionMatchesFen() {
+        Field field = new Field();
+        field.trySetFEN("8/8/1P6/2K1k2p/8/8/7R/8 w - - 0 1");
+        assertTrue(field.move(new Move(Square.parseString("b6"), Square.parseString("b7"))));
+        assertTrue(field.move(new Move(Square.parseString("e5"), Square.parseString("e4"))));
+        Move promotion = new Move(Square.parseString("b7"), Square.parseString("b8"));
+        promotion.setPromotionPiece(PieceUtil.WHITE_QUEEN);
+        assertTrue(field.move(promotion));
+
+        assertEquals(evaluateFen(field.getFEN()), evaluator.evaluate(field), "The evaluation must only depend on the position");
+    }
+
+    @Test
+    public void testEvaluationOfRandomGamesMatchesFen() {
+        // the evaluations are cached by position, so they must not depend on the moves that led to it
+        Random random = new Random(1);
+        for (int game = 0; game < 20; game++) {
+            Field field = new Field();
+            for (int ply = 0; ply < 80 && field.getGameState() == GameState.NOT_DECIDED; ply++) {
+                var moves = field.getLegalMoves();
+                field.forceMove(moves.get(random.nextInt(moves.size())), false);
+                assertEquals(evaluateFen(field.getFEN()), evaluator.evaluate(field), "Evaluation differs in " + field.getFEN());
+            }
+        }
+    }
+
+    @Test
+    public void testLazyEvaluationIsBound() {
+        Field field = new Field();
+        field.trySetFEN("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1");
+        int exact = evaluator.evaluate(field);
+
+        int upper = evaluator.evaluate(field, exact + 2000, exact + 3000);
+        assertTrue(evaluator.isLastEvaluationLazy());
+        assertTrue(upper >= exact && upper <= exact + 2000, "A fail low has to be an upper bound below alpha");
+
+        int lower = evaluator.evaluate(field, exact - 3000, exact - 2000);
+        assertTrue(evaluator.isLastEvaluationLazy());
+        assertTrue(lower <= exact && lower >= exact - 2000, "A fail high has to be a lower bound above beta");
+    }
+
+    private int evaluateFen(String fen) {
+        Field field = new Field();
+        field.trySetFEN(fen);
+        return new PositionTablesEvaluator().evaluate(field);
+    }
+}
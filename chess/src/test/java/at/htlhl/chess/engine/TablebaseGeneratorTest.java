@@ -0,0 +1,34 @@
+package at.htlhl.chess.engine;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TablebaseGeneratorTest {
+
+    @Test
+    public void testKingAndQueenLongestMate() {
+        Tablebase table = new TablebaseGenerator().generate("Q", "");
+        int longest = 0;
+        boolean whiteWins = false;
+        for (int i = 0; i < table.getSize(); i++) {
+            byte value = table.getValue(i);
+            if (value == Tablebase.ILLEGAL) continue;
+            longest = Math.max(longest, Tablebase.toPlies(value));
+            if (value > 0) whiteWins = true;
+        }
+        // mate in 10 moves with white to move, so black to move loses in 20 plies
+        assertEquals(20, longest);
+        assertTrue(whiteWins);
+    }
+
+    @Test
+    public void testKingAndBishopIsDraw() {
+        Tablebase table = new TablebaseGenerator().generate("B", "");
+        for (int i = 0; i < table.getSize(); i++) {
+            byte value = table.getValue(i);
+            if (value != Tablebase.ILLEGAL)
+                assertEquals(Tablebase.DRAW, value, "Position " + i + " of " + table.getName() + " is not a draw");
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package at.htlhl.chess.engine;
+
+import at.htlhl.chess.boardlogic.Field;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TrainingDataTest {
+
+    private static final String CASTLING_FEN = "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w Kq - 7 23";
+    private static final String EN_PASSANT_FEN = "rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq f6 0 3";
+    private static final String BLACK_TO_MOVE_FEN = "8/8/1p2k1p1/3p3p/1p1P1P1P/1P2PK2/8/8 b - - 54 131";
+
+    @Test
+    public void testEncodeDecodeRoundTrip() {
+        for (String fen : new String[]{CASTLING_FEN, EN_PASSANT_FEN, BLACK_TO_MOVE_FEN}) {
+            var buffer = ByteBuffer.allocate(TrainingData.RECORD_SIZE).order(ByteOrder.BIG_ENDIAN);
+            assertTrue(TrainingData.encode(fieldOf(fen), -123, buffer));
+            assertEquals(TrainingData.RECORD_SIZE, buffer.position());
+            TrainingData.setResult(buffer, 0, TrainingData.WHITE_WIN);
+
+            var entry = TrainingData.decode(buffer.flip());
+            assertEquals(fen, entry.fen());
+            assertEquals(-123, entry.score());
+            assertEquals(TrainingData.WHITE_WIN, entry.result());
+        }
+    }
+
+    @Test
+    public void testScoreIsClamped() {
+        var buffer = ByteBuffer.allocate(TrainingData.RECORD_SIZE).order(ByteOrder.BIG_ENDIAN);
+        TrainingData.encode(fieldOf(CASTLING_FEN), Integer.MAX_VALUE, buffer);
+        assertEquals(Short.MAX_VALUE, TrainingData.decode(buffer.flip()).score());
+    }
+
+    @Test
+    public void testReadFile() throws IOException {
+        Path file = Files.createTempFile("training", ".bin");
+        try {
+            var buffer = ByteBuffer.allocate(TrainingData.HEADER_SIZE + 3 * TrainingData.RECORD_SIZE).order(ByteOrder.BIG_ENDIAN);
+            buffer.put(TrainingData.createHeader());
+            int[] results = {TrainingData.BLACK_WIN, TrainingData.DRAW, TrainingData.WHITE_WIN};
+            String[] fens = {CASTLING_FEN, EN_PASSANT_FEN, BLACK_TO_MOVE_FEN};
+            for (int i = 0; i < fens.length; i++) {
+                int recordStart = buffer.position();
+                TrainingData.encode(fieldOf(fens[i]), i, buffer);
+                TrainingData.setResult(buffer, recordStart, results[i]);
+            }
+            Files.write(file, buffer.array());
+            assertTrue(TrainingData.isTrainingData(file));
+
+            var entries = new ArrayList<TrainingData.Entry>();
+            // a batch size that does not divide the record count
+            TrainingData.read(file, 2, entries::addAll);
+            assertEquals(fens.length, entries.size());
+            for (int i = 0; i < fens.length; i++)
+                assertEquals(new TrainingData.Entry(fens[i], i, results[i]), entries.get(i));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static Field fieldOf(String fen) {
+        Field field = new Field();
+        assertTrue(field.trySetFEN(fen));
+        return field;
+    }
+}